@@ -0,0 +1,472 @@
+/**
+ *
+ */
+package org.theseed.genome.align;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.theseed.sequence.Sequence;
+import org.theseed.sequence.align.GuardedAligner;
+import org.theseed.sequence.align.MultiAligner;
+
+/**
+ * This object manages the execution of multiple-sequence alignments on a pool of worker threads.  The client
+ * submits alignment jobs, each identified by a key, and the completed alignments are passed to a consumer in
+ * the same order the jobs were submitted.  The consumer is always called on the submitting thread, so it does
+ * not need to be thread-safe.
+ *
+ * The actual alignment is performed by a thread-safe MultiAligner.  If the aligner contains a failure guard, the
+ * executor can track it, and the consumer is then told whether each alignment used the guard's fallback.  Each job
+ * runs entirely on one worker thread, so the guard's per-thread tracking identifies the job exactly, even when the
+ * guard is called several times for it.  If a job fails, the remaining jobs are
+ * cancelled and the failure is rethrown to the client.  The client must call "drain" at the end of a successful
+ * run to wait for the outstanding jobs and deliver them.  Closing the executor without draining it, as happens
+ * when the client is unwinding from an exception, cancels the outstanding jobs without calling the consumer.
+ *
+ * Jobs waiting for a worker are dispatched in order of estimated cost, most expensive first, so that a few large
+ * alignments do not leave a long single-threaded tail at the end of the run.  The cost of a job is the number of
+ * sequences times their total length.  Only jobs inside the lookahead window can be reordered, since every
+ * undelivered job holds its sequences and result in memory.  At the end, we log the observed makespan along with
+ * the makespan predicted by scheduling the estimated costs longest-first on the worker threads, using the observed
+ * time per unit of cost.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class AlignmentExecutor<T> implements AutoCloseable {
+
+    // FIELDS
+    /** logging facility */
+    protected static Logger log = LoggerFactory.getLogger(AlignmentExecutor.class);
+    /** worker thread pool */
+    private ThreadPoolExecutor pool;
+    /** aligner used to perform the alignments */
+    private MultiAligner aligner;
+    /** consumer for completed alignments */
+    private IConsumer<T> consumer;
+    /** queue of jobs not yet delivered, in submission order */
+    private Deque<Job<T>> pending;
+    /** maximum number of undelivered jobs */
+    private int maxPending;
+    /** TRUE if a job or the consumer has failed */
+    private boolean failed;
+    /** number of alignments performed */
+    private int alignCount;
+    /** number of worker threads */
+    private int threads;
+    /** number of jobs submitted to the pool */
+    private long jobCount;
+    /** estimated costs of the jobs submitted to the pool */
+    private List<Long> costs;
+    /** total worker time spent on alignments, in nanoseconds */
+    private AtomicLong busyNanos;
+    /** start time of the first alignment job, or 0 if none has been submitted */
+    private long startTime;
+    /** controller for the worker count, or NULL if the worker count is fixed */
+    private ConcurrencyController controller;
+    /** failure guard whose fallbacks are tracked, or NULL if there is none */
+    private GuardedAligner guard;
+
+    /**
+     * Interface for a consumer of completed alignments.
+     */
+    public interface IConsumer<T> {
+
+        /**
+         * Process a completed alignment.
+         *
+         * @param key			key of the alignment job
+         * @param alignment		list of aligned sequences, or NULL if the job was skipped
+         * @param fallback		TRUE if any part of the alignment came from the failure guard's fallback
+         *
+         * @throws Exception
+         */
+        void accept(T key, List<Sequence> alignment, boolean fallback) throws Exception;
+
+    }
+
+    /**
+     * This object tracks a job that has been submitted but not yet delivered.  If no alignment
+     * is needed, the result will be NULL.
+     */
+    private static class Job<T> {
+
+        /** key of this job */
+        private T key;
+        /** future alignment result, or NULL if there is no alignment */
+        private Future<List<Sequence>> result;
+
+        /**
+         * Create a job descriptor.
+         *
+         * @param key		key of the job
+         * @param result	future alignment result, or NULL if there is nothing to align
+         */
+        protected Job(T key, Future<List<Sequence>> result) {
+            this.key = key;
+            this.result = result;
+        }
+
+        /**
+         * @return TRUE if this job can be delivered without waiting
+         */
+        protected boolean isDone() {
+            return (this.result == null || this.result.isDone());
+        }
+
+    }
+
+    /**
+     * This is the work performed by an alignment task.  It times the alignment and records whether the failure
+     * guard used its fallback.
+     */
+    private static class AlignCall implements Callable<List<Sequence>> {
+
+        /** aligner to use */
+        private MultiAligner aligner;
+        /** sequences to align */
+        private List<Sequence> sequences;
+        /** failure guard to check, or NULL if there is none */
+        private GuardedAligner guard;
+        /** accumulator for the time spent aligning */
+        private AtomicLong busyNanos;
+        /** TRUE if the alignment used the fallback */
+        private volatile boolean fallback;
+
+        /**
+         * Create the work for an alignment task.
+         *
+         * @param aligner		aligner to use
+         * @param sequences		sequences to align
+         * @param guard			failure guard to check, or NULL if there is none
+         * @param busyNanos		accumulator for the time spent aligning
+         */
+        protected AlignCall(MultiAligner aligner, List<Sequence> sequences, GuardedAligner guard, AtomicLong busyNanos) {
+            this.aligner = aligner;
+            this.sequences = sequences;
+            this.guard = guard;
+            this.busyNanos = busyNanos;
+            this.fallback = false;
+        }
+
+        @Override
+        public List<Sequence> call() throws Exception {
+            long start = System.nanoTime();
+            try {
+                if (this.guard != null)
+                    this.guard.startJob();
+                List<Sequence> retVal = this.aligner.align(this.sequences);
+                if (this.guard != null)
+                    this.fallback = this.guard.isJobFallback();
+                return retVal;
+            } finally {
+                this.busyNanos.addAndGet(System.nanoTime() - start);
+            }
+        }
+
+    }
+
+    /**
+     * This is an alignment task that can be ordered by estimated cost.  The most expensive task comes first, and
+     * tasks of equal cost are taken in submission order.
+     */
+    private static class CostedTask extends FutureTask<List<Sequence>> implements Comparable<CostedTask> {
+
+        /** work performed by the task */
+        private AlignCall call;
+        /** estimated cost */
+        private long cost;
+        /** submission sequence number */
+        private long seqNum;
+
+        /**
+         * Create a costed alignment task.
+         *
+         * @param call			work to perform
+         * @param cost			estimated cost of the alignment
+         * @param seqNum		submission sequence number
+         */
+        protected CostedTask(AlignCall call, long cost, long seqNum) {
+            super(call);
+            this.call = call;
+            this.cost = cost;
+            this.seqNum = seqNum;
+        }
+
+        /**
+         * @return TRUE if the completed alignment used the fallback
+         */
+        protected boolean isFallback() {
+            return this.call.fallback;
+        }
+
+        @Override
+        public int compareTo(CostedTask o) {
+            int retVal = Long.compare(o.cost, this.cost);
+            if (retVal == 0)
+                retVal = Long.compare(this.seqNum, o.seqNum);
+            return retVal;
+        }
+
+    }
+
+    /**
+     * Create a new alignment executor.
+     *
+     * @param threads	number of worker threads
+     * @param lookahead	maximum number of undelivered jobs
+     * @param aligner	aligner to use for the alignments
+     * @param consumer	consumer for completed alignments
+     */
+    public AlignmentExecutor(int threads, int lookahead, MultiAligner aligner, IConsumer<T> consumer) {
+        this.pool = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<Runnable>());
+        this.aligner = aligner;
+        this.consumer = consumer;
+        this.pending = new ArrayDeque<Job<T>>();
+        this.maxPending = Math.max(lookahead, threads);
+        this.failed = false;
+        this.alignCount = 0;
+        this.threads = threads;
+        this.jobCount = 0;
+        this.costs = new ArrayList<Long>();
+        this.busyNanos = new AtomicLong();
+        this.startTime = 0;
+        this.controller = null;
+        this.guard = null;
+        log.info("Alignment executor started with {} threads and a lookahead of {} using {} aligner.", threads,
+                this.maxPending, aligner);
+    }
+
+    /**
+     * Allow the number of worker threads to be adjusted according to the system load.
+     *
+     * @param minThreads	minimum number of worker threads
+     * @param maxThreads	maximum number of worker threads
+     */
+    public void enableAdjustment(int minThreads, int maxThreads) {
+        if (minThreads < maxThreads)
+            this.controller = new ConcurrencyController(this.pool, minThreads, maxThreads);
+    }
+
+    /**
+     * Report the fallbacks of a failure guard to the consumer.  The guard must be part of this executor's aligner.
+     *
+     * @param guard		failure guard whose fallbacks are to be reported
+     */
+    public void trackFallbacks(GuardedAligner guard) {
+        this.guard = guard;
+    }
+
+    /**
+     * @return the estimated cost of aligning a set of sequences
+     *
+     * @param sequences		sequences to align
+     */
+    public static long estimateCost(List<Sequence> sequences) {
+        long total = 0;
+        for (Sequence seq : sequences)
+            total += seq.getSequence().length();
+        return total * sequences.size();
+    }
+
+    /**
+     * Submit a set of sequences for alignment.
+     *
+     * @param key			key to identify the alignment to the consumer
+     * @param sequences		sequences to align
+     *
+     * @throws Exception
+     */
+    public void submit(T key, List<Sequence> sequences) throws Exception {
+        long cost = estimateCost(sequences);
+        log.debug("Queueing alignment for {} with cost {}.", key, cost);
+        if (this.startTime == 0)
+            this.startTime = System.nanoTime();
+        AlignCall call = new AlignCall(this.aligner, sequences, this.guard, this.busyNanos);
+        CostedTask result = new CostedTask(call, cost, this.jobCount);
+        this.jobCount++;
+        this.costs.add(cost);
+        this.pool.execute(result);
+        this.queue(new Job<T>(key, result));
+    }
+
+    /**
+     * Queue a job whose alignment is already known, such as one recovered from a journal.  The consumer will be
+     * passed the alignment when its turn comes.
+     *
+     * @param key			key to identify the job to the consumer
+     * @param alignment		completed alignment
+     *
+     * @throws Exception
+     */
+    public void submitResult(T key, List<Sequence> alignment) throws Exception {
+        this.queue(new Job<T>(key, CompletableFuture.completedFuture(alignment)));
+    }
+
+    /**
+     * Queue a job that requires no alignment.  The consumer will be passed a NULL alignment for it when its
+     * turn comes.
+     *
+     * @param key			key to identify the job to the consumer
+     *
+     * @throws Exception
+     */
+    public void skip(T key) throws Exception {
+        this.queue(new Job<T>(key, null));
+    }
+
+    /**
+     * Add a job to the pending queue and deliver whatever is ready.  If too many jobs are outstanding, we
+     * wait for the oldest one.
+     *
+     * @param job	job to add
+     *
+     * @throws Exception
+     */
+    private void queue(Job<T> job) throws Exception {
+        if (this.failed)
+            throw new IllegalStateException("Cannot submit to an alignment executor after a failure.");
+        this.pending.add(job);
+        while (! this.pending.isEmpty() && (this.pending.size() > this.maxPending || this.pending.peek().isDone()))
+            this.deliver();
+    }
+
+    /**
+     * Remove the oldest pending job from the queue and send it to the consumer, waiting for the
+     * alignment to complete if necessary.
+     *
+     * @throws Exception
+     */
+    private void deliver() throws Exception {
+        Job<T> next = this.pending.remove();
+        try {
+            List<Sequence> alignment = null;
+            boolean fallback = false;
+            if (next.result != null) {
+                try {
+                    alignment = next.result.get();
+                } catch (ExecutionException e) {
+                    // Pass the job's failure back to the client thread.
+                    Throwable cause = e.getCause();
+                    if (cause instanceof Exception)
+                        throw (Exception) cause;
+                    throw e;
+                }
+                log.debug("Alignment complete for {}.", next.key);
+                if (next.result instanceof CostedTask) {
+                    this.alignCount++;
+                    fallback = ((CostedTask) next.result).isFallback();
+                }
+            }
+            this.consumer.accept(next.key, alignment, fallback);
+        } catch (Exception e) {
+            this.fail();
+            throw e;
+        }
+    }
+
+    /**
+     * Cancel all the pending jobs after a failure.
+     */
+    private void fail() {
+        this.failed = true;
+        for (Job<T> job : this.pending) {
+            if (job.result != null)
+                job.result.cancel(true);
+        }
+        this.pending.clear();
+    }
+
+    /**
+     * Wait for all outstanding jobs to complete and deliver them to the consumer.
+     *
+     * @throws Exception
+     */
+    public void drain() throws Exception {
+        while (! this.pending.isEmpty())
+            this.deliver();
+    }
+
+    /**
+     * @return the aligner used by this executor
+     */
+    public MultiAligner getAligner() {
+        return this.aligner;
+    }
+
+    /**
+     * @return the number of alignments performed
+     */
+    public int getAlignCount() {
+        return this.alignCount;
+    }
+
+    /**
+     * Write the predicted and observed makespan to the log.  The prediction schedules the estimated costs
+     * longest-first on the worker threads, converting cost to time using the observed time per unit of cost.
+     * It ignores the lookahead limit, so it is the best we could have done if the estimates were exact.
+     */
+    private void logMakespan() {
+        if (this.startTime > 0) {
+            double observed = (System.nanoTime() - this.startTime) / 1e9;
+            long totalCost = 0;
+            for (long cost : this.costs)
+                totalCost += cost;
+            double secsPerCost = (totalCost == 0 ? 0.0 : this.busyNanos.get() / 1e9 / totalCost);
+            // Simulate longest-first scheduling, tracking the finishing time of each thread.  If the worker count
+            // was adjusted, we use its time-weighted mean, which is only an approximation of the real schedule.
+            int workers = this.threads;
+            if (this.controller != null)
+                workers = Math.max(1, (int) Math.round(this.controller.getMeanWorkers()));
+            List<Long> sorted = new ArrayList<Long>(this.costs);
+            Collections.sort(sorted, Collections.reverseOrder());
+            PriorityQueue<Long> finishes = new PriorityQueue<Long>(workers);
+            for (int i = 0; i < workers; i++)
+                finishes.add(0L);
+            long span = 0;
+            for (long cost : sorted) {
+                long finish = finishes.remove() + cost;
+                finishes.add(finish);
+                span = Math.max(span, finish);
+            }
+            double predicted = span * secsPerCost;
+            log.info("{} alignment jobs: predicted makespan {} seconds on {} workers, observed {} seconds ({} microseconds per million cost units).",
+                    this.jobCount, String.format("%4.2f", predicted), workers, String.format("%4.2f", observed),
+                    String.format("%4.3f", secsPerCost * 1e12));
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        try {
+            if (! this.pending.isEmpty()) {
+                log.warn("Alignment executor closed with {} undelivered jobs.  Cancelling them.", this.pending.size());
+                this.fail();
+            } else if (! this.failed) {
+                this.logMakespan();
+                this.aligner.logStats();
+            }
+        } finally {
+            if (this.controller != null)
+                this.controller.close();
+            this.pool.shutdownNow();
+        }
+    }
+
+}
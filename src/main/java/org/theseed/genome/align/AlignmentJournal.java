@@ -0,0 +1,208 @@
+/**
+ *
+ */
+package org.theseed.genome.align;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.theseed.sequence.Sequence;
+
+/**
+ * This object manages an append-only journal of completed alignments, so that a long run can be resumed after a
+ * crash.  Each alignment is keyed by the ID of its base feature and the content key of its input sequences (see
+ * AlignmentKey), so a journaled alignment is only reused if the input is unchanged.
+ *
+ * Each record consists of a header line, one line per aligned sequence, and a terminator line.  The header line is
+ * a pound sign followed by the feature ID, the content key, and the sequence count, tab-delimited.  Each sequence
+ * line contains the label, comment, and aligned sequence, tab-delimited.  The terminator is two slashes.  A record
+ * without a terminator was interrupted by the crash, and is discarded when the journal is reopened.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class AlignmentJournal implements AutoCloseable {
+
+    // FIELDS
+    /** logging facility */
+    protected static Logger log = LoggerFactory.getLogger(AlignmentJournal.class);
+    /** record terminator line */
+    private static final String TERMINATOR = "//";
+    /** map of feature IDs to journaled alignments */
+    private Map<String, Entry> entries;
+    /** output writer for new records */
+    private Writer writer;
+    /** number of records written */
+    private int writeCount;
+
+    /**
+     * This object describes a journaled alignment.
+     */
+    private static class Entry {
+
+        /** content key of the input */
+        private String key;
+        /** aligned sequences */
+        private List<Sequence> alignment;
+
+        /**
+         * Create a journal entry.
+         *
+         * @param key			content key of the input
+         * @param alignment		aligned sequences
+         */
+        protected Entry(String key, List<Sequence> alignment) {
+            this.key = key;
+            this.alignment = alignment;
+        }
+
+    }
+
+    /**
+     * Open a journal.
+     *
+     * @param journalFile	name of the journal file
+     * @param resume		if TRUE, the existing journal will be loaded and extended; otherwise, it will be erased
+     *
+     * @throws IOException
+     */
+    public AlignmentJournal(File journalFile, boolean resume) throws IOException {
+        this.entries = new HashMap<String, Entry>();
+        this.writeCount = 0;
+        if (resume && journalFile.exists()) {
+            long goodLength = this.load(journalFile);
+            // Remove any incomplete record at the end, so new records are appended cleanly.
+            try (FileChannel channel = new FileOutputStream(journalFile, true).getChannel()) {
+                if (channel.size() > goodLength) {
+                    log.info("Discarding {} bytes of incomplete journal data.", channel.size() - goodLength);
+                    channel.truncate(goodLength);
+                }
+            }
+            log.info("{} alignments loaded from journal {}.", this.entries.size(), journalFile);
+        } else
+            log.info("Starting new alignment journal {}.", journalFile);
+        this.writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(journalFile, resume),
+                StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Load the complete records from a journal file.
+     *
+     * @param journalFile	journal file to load
+     *
+     * @return the length in bytes of the complete records
+     *
+     * @throws IOException
+     */
+    private long load(File journalFile) throws IOException {
+        long retVal = 0;
+        long position = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(journalFile),
+                StandardCharsets.UTF_8))) {
+            String line = reader.readLine();
+            boolean done = false;
+            while (line != null && ! done) {
+                position += lineLength(line);
+                String[] header = (line.startsWith("#") ? StringUtils.split(line.substring(1), '\t') : null);
+                if (header == null || header.length != 3)
+                    done = true;
+                else {
+                    // Read the sequences for this record.
+                    int count = Integer.parseInt(header[2]);
+                    List<Sequence> alignment = new ArrayList<Sequence>(count);
+                    line = reader.readLine();
+                    while (line != null && alignment.size() < count) {
+                        position += lineLength(line);
+                        String[] parts = StringUtils.splitPreserveAllTokens(line, '\t');
+                        if (parts.length == 3)
+                            alignment.add(new Sequence(parts[0], parts[1], parts[2]));
+                        line = reader.readLine();
+                    }
+                    // The record is only valid if it is complete.
+                    if (line == null || alignment.size() < count || ! line.equals(TERMINATOR))
+                        done = true;
+                    else {
+                        position += lineLength(line);
+                        retVal = position;
+                        this.entries.put(header[0], new Entry(header[1], alignment));
+                        line = reader.readLine();
+                    }
+                }
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the number of bytes in a journal line, including the line terminator
+     *
+     * @param line	line of interest
+     */
+    private static long lineLength(String line) {
+        return line.getBytes(StandardCharsets.UTF_8).length + 1;
+    }
+
+    /**
+     * @return the journaled alignment for a feature, or NULL if there is none for the specified input
+     *
+     * @param fid	ID of the base feature
+     * @param key	content key of the input sequences
+     */
+    public List<Sequence> get(String fid, String key) {
+        List<Sequence> retVal = null;
+        Entry entry = this.entries.get(fid);
+        if (entry != null && entry.key.equals(key))
+            retVal = entry.alignment;
+        return retVal;
+    }
+
+    /**
+     * Record a completed alignment.  The record is flushed immediately, so it survives a crash.
+     *
+     * @param fid			ID of the base feature
+     * @param key			content key of the input sequences
+     * @param alignment		aligned sequences
+     *
+     * @throws IOException
+     */
+    public void write(String fid, String key, List<Sequence> alignment) throws IOException {
+        StringBuilder buffer = new StringBuilder();
+        buffer.append('#').append(fid).append('\t').append(key).append('\t').append(alignment.size()).append('\n');
+        for (Sequence seq : alignment)
+            buffer.append(seq.getLabel()).append('\t').append(seq.getComment()).append('\t')
+                    .append(seq.getSequence()).append('\n');
+        buffer.append(TERMINATOR).append('\n');
+        this.writer.write(buffer.toString());
+        this.writer.flush();
+        this.writeCount++;
+    }
+
+    /**
+     * @return the number of records written
+     */
+    public int getWriteCount() {
+        return this.writeCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.writer.close();
+    }
+
+}
@@ -12,6 +12,7 @@ import org.theseed.basic.BaseProcessor;
  * splice		align a genome with a reference genome to fill in the gaps
  * diff			compute the number of proteins in each of a set of genomes that differ from a base strain
  * snipCount	count the snip changes in a groups.snips.tbl file
+ * convert		convert GTOs to binary genome snapshots for the diff command
  */
 public class App
 {
@@ -38,6 +39,9 @@ public class App
         case "snipCount" :
             processor = new SnipCountProcessor();
             break;
+        case "convert" :
+            processor = new ConvertProcessor();
+            break;
         default:
             throw new RuntimeException("Invalid command " + command);
         }
@@ -8,12 +8,19 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.kohsuke.args4j.Option;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.theseed.basic.BaseProcessor;
 import org.theseed.basic.ParseFailureException;
 import org.theseed.sequence.DnaKmers;
+import org.theseed.sequence.align.CachingAligner;
+import org.theseed.sequence.align.CollapsingAligner;
+import org.theseed.sequence.align.FlankTrimmingAligner;
+import org.theseed.sequence.align.GuardedAligner;
+import org.theseed.sequence.align.MultiAligner;
+import org.theseed.sequence.align.UngappedAligner;
 
 /**
  * @author Bruce Parrello
@@ -32,12 +39,66 @@ public abstract class BaseAlignProcessor extends BaseProcessor {
     /** kmer size for computing distances */
     @Option(name = "-K", metaVar = "15", usage = "kmer size for computing sequence distances")
     private int kmerSize;
+    /** number of concurrent alignment jobs */
+    @Option(name = "--threads", metaVar = "8", usage = "initial number of alignments to run concurrently")
+    private int threads;
+    /** minimum number of concurrent alignment jobs */
+    @Option(name = "--minThreads", metaVar = "2", usage = "minimum number of alignments to run concurrently (default is the initial number)")
+    private int minThreads;
+    /** maximum number of concurrent alignment jobs */
+    @Option(name = "--maxThreads", metaVar = "16", usage = "maximum number of alignments to run concurrently (default is the initial number)")
+    private int maxThreads;
+    /** maximum number of alignments queued ahead of output */
+    @Option(name = "--lookahead", metaVar = "32", usage = "maximum number of alignments queued ahead of output (default is 4 per thread)")
+    private int lookahead;
+    /** name of the aligner to use */
+    @Option(name = "--aligner", metaVar = "java", usage = "name of the multiple-sequence aligner to use (default clustal)")
+    private String alignerName;
+    /** alignment mode */
+    @Option(name = "--alignMode", usage = "alignment strategy")
+    private MultiAligner.Mode alignMode;
+    /** alignment space for coding sequences */
+    @Option(name = "--alignSpace", usage = "space in which to align coding sequences")
+    private MultiAligner.Space alignSpace;
+    /** alignment cache directory */
+    @Option(name = "--cacheDir", metaVar = "alignCache", usage = "directory for cached alignments (default is in the work directory)")
+    private File cacheDir;
+    /** maximum alignment cache size in megabytes */
+    @Option(name = "--cacheSize", metaVar = "1024", usage = "maximum size of the alignment cache, in megabytes")
+    private int cacheSize;
+    /** if specified, the alignment cache will not be used */
+    @Option(name = "--noCache", usage = "if specified, alignments will not be cached")
+    private boolean noCache;
+    /** maximum time for an alignment attempt, in seconds */
+    @Option(name = "--timeout", metaVar = "600", usage = "maximum seconds for an alignment attempt (0 for no limit)")
+    private int timeout;
+    /** number of retries for a failed alignment */
+    @Option(name = "--retries", metaVar = "2", usage = "number of retries for a failed or timed-out alignment")
+    private int retries;
+    /** fallback strategy for failed alignments */
+    @Option(name = "--fallback", usage = "strategy to use when all the alignment attempts fail")
+    private GuardedAligner.Fallback fallback;
+    /** failure guard for the current aligner */
+    private GuardedAligner guard;
 
     @Override
     protected final void setDefaults() {
         this.workDir = new File(System.getProperty("user.dir"), "Temp");
         this.kmerSize = DnaKmers.kmerSize();
         this.maxDist = 0.6;
+        this.threads = Runtime.getRuntime().availableProcessors();
+        this.minThreads = 0;
+        this.maxThreads = 0;
+        this.lookahead = 0;
+        this.alignerName = null;
+        this.alignMode = MultiAligner.Mode.PROGRESSIVE;
+        this.alignSpace = MultiAligner.Space.DNA;
+        this.cacheDir = null;
+        this.cacheSize = 1024;
+        this.noCache = false;
+        this.timeout = 0;
+        this.retries = 1;
+        this.fallback = GuardedAligner.Fallback.STAR;
         setProcessDefaults();
     }
 
@@ -62,6 +123,37 @@ public abstract class BaseAlignProcessor extends BaseProcessor {
         if (this.kmerSize < 3 || this.kmerSize > 100)
             throw new ParseFailureException("Kmer size " + this.kmerSize + " is out of range.  Must be >=3 and <= 100.");
         DnaKmers.setKmerSize(this.kmerSize);
+        // Verify the thread count.
+        if (this.threads < 1)
+            throw new ParseFailureException("Thread count must be at least 1.");
+        if (this.minThreads == 0)
+            this.minThreads = this.threads;
+        if (this.maxThreads == 0)
+            this.maxThreads = this.threads;
+        if (this.minThreads < 1 || this.minThreads > this.threads || this.maxThreads < this.threads)
+            throw new ParseFailureException("Thread limits must satisfy 1 <= minThreads <= threads <= maxThreads.");
+        if (this.lookahead < 0)
+            throw new ParseFailureException("Lookahead cannot be negative.");
+        if (this.lookahead == 0)
+            this.lookahead = this.maxThreads * 4;
+        // Verify the aligner name.  The star mode does its own pairwise alignments, so it cannot use another aligner.
+        if (this.alignMode == MultiAligner.Mode.STAR && this.alignerName != null)
+            throw new ParseFailureException("The --aligner option cannot be used with the STAR alignment mode.");
+        if (this.alignerName == null)
+            this.alignerName = "clustal";
+        if (! MultiAligner.getNames().stream().anyMatch(x -> x.equalsIgnoreCase(this.alignerName)))
+            throw new ParseFailureException("Unknown aligner type \"" + this.alignerName + "\".  Available aligners are "
+                    + StringUtils.join(MultiAligner.getNames(), ", ") + ".");
+        // Validate the failure handling.
+        if (this.timeout < 0)
+            throw new ParseFailureException("Timeout cannot be negative.");
+        if (this.retries < 0)
+            throw new ParseFailureException("Retry count cannot be negative.");
+        // Set up the alignment cache.
+        if (this.cacheSize <= 0)
+            throw new ParseFailureException("Cache size must be positive.");
+        if (this.cacheDir == null)
+            this.cacheDir = new File(this.workDir, "alignCache");
         this.validateProcessParms();
         return true;
     }
@@ -81,6 +173,13 @@ public abstract class BaseAlignProcessor extends BaseProcessor {
         return this.workDir;
     }
 
+    /**
+     * @return the alignment space for coding sequences
+     */
+    public MultiAligner.Space getAlignSpace() {
+        return this.alignSpace;
+    }
+
     /**
      * @return the maximum acceptable kmer distance
      */
@@ -88,4 +187,53 @@ public abstract class BaseAlignProcessor extends BaseProcessor {
         return this.maxDist;
     }
 
+    /**
+     * @return an alignment executor for this command
+     *
+     * @param consumer	consumer for the completed alignments
+     *
+     * @throws IOException
+     * @throws ParseFailureException
+     */
+    protected <T> AlignmentExecutor<T> createExecutor(AlignmentExecutor.IConsumer<T> consumer) throws IOException, ParseFailureException {
+        MultiAligner aligner = this.createAligner();
+        AlignmentExecutor<T> retVal = new AlignmentExecutor<T>(this.threads, this.lookahead, aligner, consumer);
+        retVal.enableAdjustment(this.minThreads, this.maxThreads);
+        retVal.trackFallbacks(this.guard);
+        return retVal;
+    }
+
+    /**
+     * Add any processing specific to this command to the aligner.  The default is to return the aligner unchanged.
+     *
+     * @return the aligner to use for this command
+     *
+     * @param aligner	aligner built from the command-line options
+     */
+    protected MultiAligner wrapAligner(MultiAligner aligner) {
+        return aligner;
+    }
+
+    /**
+     * @return the aligner specified by the command-line options
+     *
+     * @throws IOException
+     * @throws ParseFailureException
+     */
+    protected MultiAligner createAligner() throws IOException, ParseFailureException {
+        MultiAligner retVal = this.alignMode.create(MultiAligner.create(this.alignerName, this.workDir));
+        // Shared flanks do not need to be aligned.
+        retVal = new FlankTrimmingAligner(retVal);
+        // Only one copy of each distinct sequence needs to be aligned.
+        retVal = new CollapsingAligner(retVal);
+        if (! this.noCache)
+            retVal = new CachingAligner(retVal, this.cacheDir, this.cacheSize * 1024L * 1024L);
+        // Failures are handled outside the cache, so fallback alignments are never cached.
+        this.guard = new GuardedAligner(retVal, this.timeout, this.retries, this.fallback);
+        retVal = this.wrapAligner(this.guard);
+        // Substitution-only sets are already aligned, so we check for those before anything else.
+        retVal = new UngappedAligner(retVal);
+        return retVal;
+    }
+
 }
@@ -0,0 +1,241 @@
+/**
+ *
+ */
+package org.theseed.genome.align;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This object adjusts the number of worker threads in an alignment pool while it runs.  At regular intervals, it
+ * samples the system CPU load, the available physical memory, and the number of jobs waiting for a worker.  If the
+ * machine is overloaded or short of memory, a worker is removed.  If jobs are waiting and the machine has spare
+ * capacity, a worker is added.  The worker count always stays between the minimum and maximum specified by the
+ * client, and every change is logged.
+ *
+ * The CPU load is the system load average divided by the number of processors, so it is for the whole machine and
+ * includes external aligner processes as well as the JVM.  The available memory is the MemAvailable figure from
+ * /proc/meminfo, which counts reclaimable page cache as available.  If either value cannot be determined, it is
+ * ignored.
+ *
+ * The load average trails a change in the worker count by about a minute, so after each change the controller waits
+ * out a cool-down period before acting on the CPU load again.  The memory figure is current, so a memory shortage
+ * removes a worker even during the cool-down.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class ConcurrencyController implements AutoCloseable {
+
+    // FIELDS
+    /** logging facility */
+    protected static Logger log = LoggerFactory.getLogger(ConcurrencyController.class);
+    /** CPU load above which we remove a worker */
+    private static final double HIGH_CPU = 0.95;
+    /** CPU load below which we can add a worker */
+    private static final double LOW_CPU = 0.75;
+    /** fraction of physical memory available below which we remove a worker */
+    private static final double LOW_MEMORY = 0.10;
+    /** fraction of physical memory available above which we can add a worker */
+    private static final double SAFE_MEMORY = 0.20;
+    /** Linux memory statistics file */
+    private static final File MEMINFO = new File("/proc/meminfo");
+    /** number of seconds between samples */
+    private static final int INTERVAL = 5;
+    /** number of samples after a change during which the CPU load is ignored (one load-average period) */
+    protected static final int COOL_DOWN = 60 / INTERVAL;
+    /** pool being controlled */
+    private ThreadPoolExecutor pool;
+    /** minimum number of workers */
+    private int minThreads;
+    /** maximum number of workers */
+    private int maxThreads;
+    /** operating system statistics */
+    private OperatingSystemMXBean osBean;
+    /** sampling thread */
+    private ScheduledExecutorService sampler;
+    /** number of adjustments made */
+    private int adjustments;
+    /** number of samples remaining in the current cool-down */
+    private int coolDown;
+    /** time at which control started, in nanoseconds */
+    private long startTime;
+    /** time of the last worker-count change, in nanoseconds */
+    private long lastChange;
+    /** worker-nanoseconds accumulated up to the last change */
+    private long workerNanos;
+
+    /**
+     * Start controlling a thread pool.
+     *
+     * @param pool			thread pool to control
+     * @param minThreads	minimum number of workers
+     * @param maxThreads	maximum number of workers
+     */
+    public ConcurrencyController(ThreadPoolExecutor pool, int minThreads, int maxThreads) {
+        this.pool = pool;
+        this.minThreads = minThreads;
+        this.maxThreads = maxThreads;
+        this.osBean = (OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+        this.adjustments = 0;
+        this.coolDown = 0;
+        this.startTime = System.nanoTime();
+        this.lastChange = this.startTime;
+        this.workerNanos = 0;
+        this.sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread retVal = new Thread(r, "concurrency-controller");
+            retVal.setDaemon(true);
+            return retVal;
+        });
+        this.sampler.scheduleWithFixedDelay(this::sample, INTERVAL, INTERVAL, TimeUnit.SECONDS);
+        log.info("Worker count will be adjusted between {} and {} threads.", minThreads, maxThreads);
+    }
+
+    /**
+     * Sample the system state and adjust the worker count if necessary.
+     */
+    private void sample() {
+        try {
+            double cpu = -1.0;
+            double load = this.osBean.getSystemLoadAverage();
+            if (load >= 0.0)
+                cpu = load / this.osBean.getAvailableProcessors();
+            this.adjust(cpu, availableMemory());
+        } catch (RuntimeException e) {
+            // An exception would silently cancel the sampling, so we log it and continue.
+            log.error("Error in concurrency controller: {}", e.toString());
+        }
+    }
+
+    /**
+     * @return the fraction of physical memory available, or -1 if it cannot be determined
+     */
+    private static double availableMemory() {
+        double retVal = -1.0;
+        try {
+            long total = 0;
+            long avail = -1;
+            List<String> lines = Files.readAllLines(MEMINFO.toPath());
+            for (String line : lines) {
+                String[] parts = line.split("\\s+");
+                if (parts.length >= 2) {
+                    if (parts[0].equals("MemTotal:"))
+                        total = Long.parseLong(parts[1]);
+                    else if (parts[0].equals("MemAvailable:"))
+                        avail = Long.parseLong(parts[1]);
+                }
+            }
+            if (total > 0 && avail >= 0)
+                retVal = ((double) avail) / total;
+        } catch (IOException | NumberFormatException e) {
+            // Here we are not on Linux or the kernel is too old.  The memory check is skipped.
+        }
+        return retVal;
+    }
+
+    /**
+     * Adjust the worker count for a sample of the system state.
+     *
+     * @param cpu		CPU load, as a fraction of the processors, or a negative number if it is unknown
+     * @param freeMem	fraction of physical memory available, or a negative number if it is unknown
+     */
+    protected synchronized void adjust(double cpu, double freeMem) {
+        int queued = this.pool.getQueue().size();
+        int current = this.pool.getCorePoolSize();
+        int target;
+        if (this.coolDown > 0) {
+            // During the cool-down, only a memory shortage can change the worker count.  With the CPU load unknown
+            // and no jobs waiting, the target computation can only remove a worker for low memory.
+            this.coolDown--;
+            target = this.computeTarget(current, 0, -1.0, freeMem);
+        } else
+            target = this.computeTarget(current, queued, cpu, freeMem);
+        if (target != current) {
+            long now = System.nanoTime();
+            this.workerNanos += (now - this.lastChange) * current;
+            this.lastChange = now;
+            // The maximum pool size can never be less than the core size, so the order of the updates matters.
+            if (target > current) {
+                this.pool.setMaximumPoolSize(target);
+                this.pool.setCorePoolSize(target);
+            } else {
+                this.pool.setCorePoolSize(target);
+                this.pool.setMaximumPoolSize(target);
+            }
+            this.adjustments++;
+            this.coolDown = COOL_DOWN;
+            log.info("Worker count changed from {} to {}: CPU load {}, memory available {}, {} jobs waiting.", current,
+                    target, percent(cpu), percent(freeMem), queued);
+        }
+    }
+
+    /**
+     * @return a fraction formatted as a percentage for the log, or "unknown" if it is negative
+     *
+     * @param fraction	fraction to format, or a negative number if it is unknown
+     */
+    private static String percent(double fraction) {
+        String retVal;
+        if (fraction < 0.0)
+            retVal = "unknown";
+        else
+            retVal = String.format("%4.1f%%", fraction * 100);
+        return retVal;
+    }
+
+    /**
+     * @return the worker count to use for a sample of the system state
+     *
+     * @param current	current worker count
+     * @param queued	number of jobs waiting for a worker
+     * @param cpu		CPU load, as a fraction of the processors, or a negative number if it is unknown
+     * @param freeMem	fraction of physical memory available, or a negative number if it is unknown
+     */
+    protected int computeTarget(int current, int queued, double cpu, double freeMem) {
+        int retVal = current;
+        boolean cpuKnown = (cpu >= 0.0);
+        boolean memKnown = (freeMem >= 0.0);
+        if (memKnown && freeMem < LOW_MEMORY || cpuKnown && cpu > HIGH_CPU)
+            retVal = Math.max(this.minThreads, current - 1);
+        else if (queued > 0 && (cpuKnown || memKnown) && (! cpuKnown || cpu < LOW_CPU) && (! memKnown || freeMem > SAFE_MEMORY))
+            retVal = Math.min(this.maxThreads, current + 1);
+        return retVal;
+    }
+
+    /**
+     * @return the mean worker count since control started, weighted by time
+     */
+    public synchronized double getMeanWorkers() {
+        long now = System.nanoTime();
+        double retVal = this.pool.getCorePoolSize();
+        if (now > this.startTime)
+            retVal = (this.workerNanos + (now - this.lastChange) * retVal) / (now - this.startTime);
+        return retVal;
+    }
+
+    /**
+     * @return the number of adjustments made
+     */
+    public int getAdjustments() {
+        return this.adjustments;
+    }
+
+    @Override
+    public void close() {
+        this.sampler.shutdownNow();
+        log.info("{} worker-count adjustments made.  Final worker count was {}.", this.adjustments,
+                this.pool.getCorePoolSize());
+    }
+
+}
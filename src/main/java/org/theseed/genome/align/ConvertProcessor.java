@@ -0,0 +1,100 @@
+/**
+ *
+ */
+package org.theseed.genome.align;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.List;
+
+import org.kohsuke.args4j.Argument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.theseed.basic.BaseProcessor;
+import org.theseed.basic.ParseFailureException;
+import org.theseed.genome.Genome;
+
+/**
+ * This command converts GTO files to binary genome snapshots for the diff command.  A snapshot contains only the peg
+ * table, and reading it is much faster than parsing the JSON when the same genomes are compared repeatedly.  The
+ * snapshots are of no use to the other commands, which need contig DNA and full features and so still read GTOs.
+ * Each snapshot has the same base name as its GTO, with the extension ".snap".
+ *
+ * The positional parameters are the name of the output directory followed by the GTO inputs to convert.  Each input
+ * can be a GTO file (optionally gzip-compressed), a directory of GTOs, or a zip or tar archive (see GtoBundle).
+ *
+ * The command-line options are as follows.
+ *
+ * -h	display command-line usage
+ * -v	display more frequent log messages
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class ConvertProcessor extends BaseProcessor {
+
+    // FIELDS
+    /** logging facility */
+    protected static Logger log = LoggerFactory.getLogger(ConvertProcessor.class);
+
+    // COMMAND-LINE OPTIONS
+
+    /** output directory */
+    @Argument(index = 0, metaVar = "outDir", usage = "output directory for snapshots", required = true)
+    private File outDir;
+
+    /** GTO files to convert */
+    @Argument(index = 1, metaVar = "genome1.gto genome2.gto ...", usage = "GTO files, directories or archives to convert",
+            required = true)
+    private List<File> gtoFiles;
+
+    @Override
+    protected void setDefaults() {
+    }
+
+    @Override
+    protected boolean validateParms() throws IOException, ParseFailureException {
+        if (! this.outDir.isDirectory()) {
+            log.info("Creating output directory {}.", this.outDir);
+            if (! this.outDir.mkdirs())
+                throw new IOException("Could not create output directory " + this.outDir + ".");
+        }
+        for (File gtoFile : this.gtoFiles) {
+            if (! GtoBundle.isValidInput(gtoFile))
+                throw new FileNotFoundException("Genome input " + gtoFile + " not found or unreadable.");
+        }
+        return true;
+    }
+
+    @Override
+    protected void runCommand() throws Exception {
+        try (GtoBundle bundle = new GtoBundle(this.gtoFiles)) {
+            for (GtoSource source : bundle) {
+                log.info("Loading genome from {}.", source);
+                Genome genome = source.load();
+                File snapFile = new File(this.outDir, snapName(source.getName()));
+                GenomeSnapshot.save(genome, snapFile);
+                log.info("Snapshot of {} written to {}.", genome, snapFile);
+            }
+        }
+    }
+
+    /**
+     * @return the snapshot file name for a GTO source
+     *
+     * @param sourceName	name of the GTO source, which may be a file path or an archive entry name
+     */
+    public static String snapName(String sourceName) {
+        // Remove the directories and the archive name.
+        int start = Math.max(sourceName.lastIndexOf(':'), Math.max(sourceName.lastIndexOf('/'),
+                sourceName.lastIndexOf(File.separatorChar)));
+        String retVal = sourceName.substring(start + 1);
+        if (retVal.endsWith(".gz"))
+            retVal = retVal.substring(0, retVal.length() - 3);
+        if (retVal.endsWith(".gto"))
+            retVal = retVal.substring(0, retVal.length() - 4);
+        return retVal + ".snap";
+    }
+
+}
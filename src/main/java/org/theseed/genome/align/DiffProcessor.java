@@ -31,6 +31,8 @@ import org.theseed.proteins.FunctionMap;
  * call.  For each genome other than the base, the count of useful snip changes is output.
  *
  * The positional parameters are the file name of the base genome followed by the file names of the other genomes to look at.
+ * The other genomes can be GTOs, binary snapshots produced by the "convert" command, directories of GTOs, or zip or tar archives
+ * of GTOs.  Any GTO can be gzip-compressed.
  *
  * The command-line options are as follows.
  *
@@ -73,7 +75,7 @@ public class DiffProcessor extends BaseProcessor implements FeatureFilter.IParms
     private File baseFile;
 
     /** genome files to examine for snip changes */
-    @Argument(index = 1, metaVar = "test1.gto test2.gto ...", usage = "GTOs to test for snip changes", required = true)
+    @Argument(index = 1, metaVar = "test1.gto test2.gto ...", usage = "GTOs, snapshots, or archives to test for snip changes", required = true)
     private List<File> testFiles;
 
     @Override
@@ -113,25 +115,29 @@ public class DiffProcessor extends BaseProcessor implements FeatureFilter.IParms
             this.parseAltGenome(altFile);
         // Write the output header.
         System.out.println("genome_id\tgenome_name\tchanges");
-        // Loop through the test genomes.
-        for (File testFile : this.testFiles) {
-            log.info("Loading test genome from {}.", testFile);
-            Genome genome = new Genome(testFile);
-            int count = 0;
-            int changes = 0;
-            for (Feature feat : genome.getPegs()) {
-                // Get the function's feature list.
-                List<Feature> featList = this.getFeatureList(feat);
-                if (featList != null) {
-                    count++;
-                    // This feature is a change if it does not match ANY of the proteins in the feature list.
-                    String protein = feat.getProteinTranslation();
-                    boolean changed = featList.stream().noneMatch(x -> this.protMatch(x, protein));
-                    if (changed) changes++;
+        // Loop through the test genomes.  These can be compressed or in archives.
+        try (GtoBundle bundle = new GtoBundle(this.testFiles)) {
+            for (GtoSource source : bundle) {
+                log.info("Loading test genome from {}.", source);
+                // The test genomes only need their pegs' functions and proteins, so we skip parsing the rest.
+                IPegGenome genome = source.loadPegs();
+                int count = 0;
+                int changes = 0;
+                for (GtoPegReader.Peg peg : genome.getPegs()) {
+                    // Get the function's feature list.
+                    List<Feature> featList = this.getFeatureList(peg.getPegFunction());
+                    if (featList != null) {
+                        count++;
+                        // This feature is a change if it does not match ANY of the proteins in the feature list.  A peg
+                        // with no protein cannot match anything.
+                        String protein = peg.getProtein();
+                        boolean changed = (protein == null || featList.stream().noneMatch(x -> this.protMatch(x, protein)));
+                        if (changed) changes++;
+                    }
                 }
+                log.info("{} of {} proteins changed in {}.", changes, count, genome);
+                System.out.format("%s\t%s\t%d%n", genome.getId(), genome.getName(), changes);
             }
-            log.info("{} of {} proteins changed in {}.", changes, count, genome);
-            System.out.format("%s\t%s\t%d%n", genome.getId(), genome.getName(), changes);
         }
     }
 
@@ -155,7 +161,7 @@ public class DiffProcessor extends BaseProcessor implements FeatureFilter.IParms
      */
     private void parseBaseGenome() throws IOException {
         log.info("Processing base genome in {}.", this.baseFile);
-        Genome baseGenome = new Genome(this.baseFile);
+        Genome baseGenome = GtoSource.loadGenome(this.baseFile);
         this.funMap = new FunctionMap();
         this.featureMap = new HashMap<String, List<Feature>>(4000);
         int count = 0;
@@ -186,11 +192,11 @@ public class DiffProcessor extends BaseProcessor implements FeatureFilter.IParms
      */
     private void parseAltGenome(File altFile) throws IOException {
         log.info("Processing alternate base genome in {}.", altFile);
-        Genome altGenome = new Genome(altFile);
+        Genome altGenome = GtoSource.loadGenome(altFile);
         int count = 0;
         for (Feature feat : altGenome.getPegs()) {
             // Get the function's feature list.
-            List<Feature> featList = this.getFeatureList(feat);
+            List<Feature> featList = this.getFeatureList(feat.getPegFunction());
             if (featList != null && feat.getProteinTranslation() != null) {
                 // Here the function was found in the base genome.  Add our feature to it.
                 featList.add(feat);
@@ -201,13 +207,12 @@ public class DiffProcessor extends BaseProcessor implements FeatureFilter.IParms
     }
 
     /**
-     * @return the feature list for the specified feature's function, or NULL if it is not in the base genome
+     * @return the feature list for the specified function, or NULL if it is not in the base genome
      *
-     * @param feat	feature whose function should be interrogated
+     * @param pegFunction	functional assignment to interrogate
      */
-    private List<Feature> getFeatureList(Feature feat) {
+    private List<Feature> getFeatureList(String pegFunction) {
         List<Feature> retVal = null;
-        String pegFunction = feat.getPegFunction();
         Function fun = this.funMap.getByName(pegFunction);
         if (fun != null)
             retVal = this.featureMap.get(fun.getId());
@@ -26,7 +26,6 @@ import org.slf4j.LoggerFactory;
 import org.theseed.basic.ParseFailureException;
 import org.theseed.genome.Feature;
 import org.theseed.genome.Genome;
-import org.theseed.genome.GenomeDirectory;
 import org.theseed.io.TabbedLineReader;
 import org.theseed.proteins.FeatureFilter;
 import org.theseed.proteins.Function;
@@ -39,15 +38,19 @@ import org.theseed.sequence.ExtendedProteinRegion;
 import org.theseed.sequence.MarkedRegionList;
 import org.theseed.sequence.RegionList;
 import org.theseed.sequence.Sequence;
-import org.theseed.sequence.clustal.ClustalPipeline;
+import org.theseed.sequence.align.AlignmentKey;
+import org.theseed.sequence.align.MultiAligner;
 
 /**
  * This command will read the genomes in a directory and output the snips.  One or more genomes will be identified as the wild
  * types.  A snip is only considered relevant if it differs from all the wild types.  The first wild type will be treated as
  * the base genome, and all the snips will be displayed relative to that genome's DNA.
  *
+ * The upstream and coding parts of each region are aligned separately, and a part that is the same in every region is not
+ * aligned at all.  The coding parts can optionally be aligned in protein space.
+ *
  * The positional parameters are the name of the input directory, the file name of the base genome, and the IDs of the other wild
- * genomes.  The command-line options are as follows.
+ * genomes.  The input directory can also be a zip or tar archive, and the GTOs can be gzip-compressed.  The command-line options are as follows.
  *
  * -h	display command-line usage
  * -v	display more detailed progress messages
@@ -68,6 +71,27 @@ import org.theseed.sequence.clustal.ClustalPipeline;
  * 				for the base genome features
  * --special	comma-delimited list of important genome IDs, used for MAJOR-format report
  * --fidFile	tab-delimited file with headers containing desired feature IDs in the first column (for LIST filter)
+ * --threads	initial number of alignments to run concurrently; the default is the number of processors
+ * --minThreads	minimum number of concurrent alignments when adjusting to the system load; the default is the initial number
+ * --maxThreads	maximum number of concurrent alignments when adjusting to the system load; the default is the initial number
+ * --lookahead	maximum number of alignments queued ahead of output; the default is 4 per maximum thread
+ * --aligner	name of the aligner to use (clustal, java, stub, or any other installed provider); the default is clustal
+ * --alignMode	alignment strategy (PROGRESSIVE for a full multiple alignment, STAR for pairwise alignments to the base,
+ * 				ANCHOR for full alignments between shared kmer anchors)
+ * --alignSpace	space for aligning coding sequences (DNA or PROTEIN); the default is DNA
+ * --cacheDir	directory for cached alignments; the default is "alignCache" in the working directory
+ * --cacheSize	maximum size of the alignment cache, in megabytes
+ * --noCache	if specified, alignments will not be cached
+ * --timeout	maximum number of seconds for an alignment attempt; the default is 0 (no limit)
+ * --retries	number of times to retry a failed or timed-out alignment; the default is 1
+ * --fallback	strategy when all alignment attempts fail (STAR, UNGAPPED, or SKIP); the default is STAR
+ * --loaders	number of threads for loading genomes; the default is 2
+ * --resume		if specified, alignments recorded in the journal by a previous run will be reused
+ * --sketch		number of hashes in the MinHash sketch used to prefilter candidates for large gene families; 0 to
+ * 				compute the full kmer distance to every candidate; the default is 256
+ *
+ * A manifest of the input directory is kept in the directory itself (see GenomeManifest), so the genomes to load can be
+ * chosen without parsing them.
  *
  * @author Bruce Parrello
  *
@@ -91,6 +115,14 @@ public class GenomeAlignProcessor extends BaseAlignProcessor implements FeatureF
     private Map<String, List<String>> groupMap;
     /** output stream */
     private OutputStream outStream;
+    /** journal of completed alignments */
+    private AlignmentJournal journal;
+    /** map of submitted features to the content keys of their inputs */
+    private Map<Feature, String> journalKeys;
+    /** map of region labels to upstream lengths, used to align upstream and coding parts separately */
+    private Map<String, Integer> upstreamLengths;
+    /** name of the journal file in the work directory */
+    private static final String JOURNAL_NAME = "genomes.journal";
 
     // COMMAND-LINE OPTIONS
 
@@ -138,8 +170,20 @@ public class GenomeAlignProcessor extends BaseAlignProcessor implements FeatureF
     @Option(name = "--fidFile", metaVar = "fidsToKeep.tbl", usage = "file containing list of acceptable features for LIST filter")
     private File fidFile;
 
+    /** number of genome loader threads */
+    @Option(name = "--loaders", metaVar = "4", usage = "number of threads for loading genomes")
+    private int loaders;
+
+    /** if specified, alignments from a previous run's journal will be reused */
+    @Option(name = "--resume", usage = "if specified, reuse alignments journaled by a previous run")
+    private boolean resume;
+
+    /** MinHash sketch size for prefiltering closest-region candidates */
+    @Option(name = "--sketch", metaVar = "512", usage = "MinHash sketch size for prefiltering region candidates (0 to disable)")
+    private int sketchSize;
+
     /** input genome directory */
-    @Argument(index = 0, metaVar = "inDir", usage = "input genome directory", required = true)
+    @Argument(index = 0, metaVar = "inDir", usage = "input genome directory or archive", required = true)
     private File inDir;
 
     /** base genome ID */
@@ -163,16 +207,25 @@ public class GenomeAlignProcessor extends BaseAlignProcessor implements FeatureF
         this.outFile = null;
         this.groupOutFile = null;
         this.fidFile = null;
+        this.resume = false;
+        this.loaders = 2;
+        this.sketchSize = 256;
     }
 
     @Override
     protected void validateProcessParms() throws IOException, ParseFailureException {
+        // Verify the loader thread count.
+        if (this.loaders < 1)
+            throw new ParseFailureException("Loader thread count must be at least 1.");
+        // Verify the sketch size.
+        if (this.sketchSize < 0)
+            throw new ParseFailureException("Sketch size cannot be negative.");
         // Verify the upstream distance.
         if (this.maxUpstream < 0)
             throw new ParseFailureException("Upstream distance must be 0 or more.");
         // Verify the input directory.
-        if (! this.inDir.isDirectory())
-            throw new FileNotFoundException("Input directory " + this.inDir + " is not found or invalid.");
+        if (! GtoBundle.isValidInput(this.inDir))
+            throw new FileNotFoundException("Input directory or archive " + this.inDir + " is not found or invalid.");
         // Verify the base genome.
         if (! this.baseGto.canRead())
             throw new FileNotFoundException("Base genome file " + this.baseGto + " not found or unreadable.");
@@ -235,6 +288,7 @@ public class GenomeAlignProcessor extends BaseAlignProcessor implements FeatureF
             this.funMap = new FunctionMap();
             // Create the region list map.  It is keyed by feature with sorting by location, so the output is in chromosome order.
             this.alignMap = new TreeMap<Feature, MarkedRegionList>(new Feature.LocationComparator());
+            this.upstreamLengths = new HashMap<String, Integer>();
             // Set up the group output file, if any.
             if (this.groupOutFile != null)
                 reporter.setupFeatureOutput(this.groupOutFile);
@@ -245,27 +299,39 @@ public class GenomeAlignProcessor extends BaseAlignProcessor implements FeatureF
                 reporter.reorder(this.genomeLabels);
             // Denote we are done registering genomes.
             reporter.initializeOutput();
-            // Create our temporary file.
-            File tempFile = File.createTempFile("align", ".fa", this.getWorkDir());
-            tempFile.deleteOnExit();
-            // Loop through the alignments.
+            // Loop through the alignments.  The executor returns the results in the order of the alignment map.
             log.info("Processing alignments.");
-            for (Map.Entry<Feature, MarkedRegionList> alignEntry : this.alignMap.entrySet()) {
-                MarkedRegionList regions = alignEntry.getValue();
-                Feature feat = alignEntry.getKey();
-                // We only align these regions if at least one has a functional difference.
-                if (regions.getCounter() == 0) {
-                    // Nothing to align, but insure we have the feature-data output.
-                    reporter.writeFeatureData(feat.getId());
-                } else {
-                    // Here we have enough data to do an alignment.
-                    log.info("Performing alignment on {}.", feat);
-                    regions.save(tempFile);
-                    ClustalPipeline aligner = new ClustalPipeline(tempFile);
-                    List<Sequence> alignment = aligner.run();
-                    // Output the alignment.
-                    reporter.processAlignment(feat, regions, alignment);
+            this.journalKeys = new HashMap<Feature, String>();
+            int replayCount = 0;
+            try (AlignmentJournal journal = new AlignmentJournal(new File(this.getWorkDir(), JOURNAL_NAME), this.resume);
+                    AlignmentExecutor<Feature> executor = this.createExecutor((feat, alignment, fallback) ->
+                    this.processAlignment(reporter, feat, alignment, fallback))) {
+                this.journal = journal;
+                String alignerName = executor.getAligner().getName();
+                for (Map.Entry<Feature, MarkedRegionList> alignEntry : this.alignMap.entrySet()) {
+                    MarkedRegionList regions = alignEntry.getValue();
+                    Feature feat = alignEntry.getKey();
+                    // We only align these regions if at least one has a functional difference.
+                    if (regions.getCounter() == 0)
+                        executor.skip(feat);
+                    else {
+                        // Check for a journaled alignment from a previous run.
+                        List<Sequence> sequences = regions.toSequences();
+                        String key = AlignmentKey.compute(alignerName, sequences);
+                        List<Sequence> alignment = journal.get(feat.getId(), key);
+                        if (alignment != null) {
+                            log.info("Reusing journaled alignment for {}.", feat);
+                            executor.submitResult(feat, alignment);
+                            replayCount++;
+                        } else {
+                            log.info("Queueing alignment for {}.", feat);
+                            this.journalKeys.put(feat, key);
+                            executor.submit(feat, sequences);
+                        }
+                    }
                 }
+                executor.drain();
+                log.info("{} alignments reused from journal, {} journaled.", replayCount, journal.getWriteCount());
             }
             // Finish the report.
             reporter.finishReport();
@@ -275,18 +341,60 @@ public class GenomeAlignProcessor extends BaseAlignProcessor implements FeatureF
         }
     }
 
+    @Override
+    protected MultiAligner wrapAligner(MultiAligner aligner) {
+        // Align the upstream and coding parts of each region separately, so unchanged parts are skipped.
+        return this.getAlignSpace().create(aligner, x -> this.upstreamLengths.getOrDefault(x, -1));
+    }
+
+    /**
+     * Send a completed alignment to the reporter.
+     *
+     * @param reporter		snip reporter to receive the alignment
+     * @param feat			base genome feature for the alignment
+     * @param alignment		aligned sequences, or NULL if no alignment was necessary or possible
+     * @param fallback		TRUE if any part of the alignment came from the fallback strategy
+     *
+     * @throws IOException
+     */
+    private void processAlignment(SnipReporter reporter, Feature feat, List<Sequence> alignment, boolean fallback)
+            throws IOException {
+        if (alignment == null) {
+            // Nothing to align, or the alignment failed, but insure we have the feature-data output.
+            this.journalKeys.remove(feat);
+            reporter.writeFeatureData(feat.getId());
+        } else {
+            log.info("Alignment complete for {}.", feat);
+            // Journal a new alignment before reporting it.  A fallback alignment is not journaled, so it is retried on
+            // resume.
+            String key = this.journalKeys.remove(feat);
+            if (key != null) {
+                if (fallback)
+                    log.info("Fallback alignment for {} not journaled.", feat);
+                else
+                    this.journal.write(feat.getId(), key, alignment);
+            }
+            reporter.processAlignment(feat, this.alignMap.get(feat), alignment);
+        }
+    }
+
     /**
-     * This method reads in all the genomes and builds the alignment lists.
+     * This method reads in all the genomes and builds the alignment lists.  The genomes are loaded in parallel, but
+     * they are processed in file order, so the reporter registration order is always the same.
      *
      * @throws IOException
      */
     private void buildAlignments(SnipReporter reporter) throws IOException {
         // Read in the base genome and sort the regions by function.  When we process the other genomes, we will use the
         // function-to-region map to find the best feature for alignment.
-        Genome base = new Genome(this.baseGto);
+        Genome base = GtoSource.loadGenome(this.baseGto);
         log.info("Scanning base genome {}.", base);
         this.baseId = base.getId();
         Map<String, RegionList> baseMap = RegionList.createMap(this.funMap, base, this.maxUpstream);
+        // Sketch the regions, so large families can be searched quickly.
+        RegionSketchIndex sketches = null;
+        if (this.sketchSize > 0)
+            sketches = new RegionSketchIndex(baseMap, this.sketchSize, RegionSketchIndex.DEFAULT_FAILURE);
         // Now prime the alignment lists from the base map.
         log.info("Sorting features by location.");
         int filterCount = 0;
@@ -299,6 +407,7 @@ public class GenomeAlignProcessor extends BaseAlignProcessor implements FeatureF
                 else {
                     MarkedRegionList singleton = new MarkedRegionList();
                     singleton.add(region);
+                    this.upstreamLengths.put(region.getLabel(), region.getUpstreamDistance());
                     this.alignMap.put(region.getFeature(), singleton);
                 }
             }
@@ -307,70 +416,121 @@ public class GenomeAlignProcessor extends BaseAlignProcessor implements FeatureF
                 processCount, baseMap.size(), filterCount);
         // Register the base genome for the report.
         reporter.register(base);
-        // Now read the other genomes.  If we find the base, we skip it.
-        log.info("Scanning input directory {}.", this.inDir);
-        GenomeDirectory genomes = new GenomeDirectory(this.inDir);
-        for (Genome genome : genomes) {
-            if (this.baseId.contentEquals(genome.getId()))
-                log.info("Base genome found in input directory-- skipped.");
-            else {
-                log.info("Processing input genome {}.", genome);
-                // Register the genome if it is NOT one of the wild strains.  Everything is aligned, but only the base and the
-                // non-wilds are output.
-                boolean wild = this.altIds.contains(genome.getId());
-                if (! wild)
-                    reporter.register(genome);
-                // Process the regions for this genome.
-                int foundCount = 0;
-                int badFunCount = 0;
-                int tooFarCount = 0;
-                int sameCount = 0;
-                int skipCount = 0;
-                ExtendedProteinRegion.GenomeIterator iter = new ExtendedProteinRegion.GenomeIterator(genome, this.maxUpstream);
-                while (iter.hasNext()) {
-                    // Get this region and try to find the function in the function map.
-                    ExtendedProteinRegion region = iter.next();
-                    Feature feat = region.getFeature();
-                    Function fun = this.funMap.getByName(feat.getFunction());
-                    if (fun == null)
-                        badFunCount++;
-                    else {
-                        // Here we found it.  If we didn't find it, then it won't match anything anyway.
-                        RegionList regions = baseMap.get(fun.getId());
-                        ExtendedProteinRegion closest = regions.getClosest(region, this.getMaxDist());
-                        if (closest == null)
-                            tooFarCount++;
+        // Now read the other genomes.  The manifest lets us skip the base before any parsing.
+        List<File> inFiles = this.selectInputFiles();
+        try (GtoBundle bundle = new GtoBundle(inFiles);
+                GenomeLoader genomes = new GenomeLoader(bundle, this.loaders)) {
+            for (Genome genome : genomes) {
+                if (this.baseId.contentEquals(genome.getId()))
+                    log.info("Base genome found in input directory-- skipped.");
+                else {
+                    log.info("Processing input genome {}.", genome);
+                    // Register the genome if it is NOT one of the wild strains.  Everything is aligned, but only the base and the
+                    // non-wilds are output.
+                    boolean wild = this.altIds.contains(genome.getId());
+                    if (! wild)
+                        reporter.register(genome);
+                    // Process the regions for this genome.
+                    int foundCount = 0;
+                    int badFunCount = 0;
+                    int tooFarCount = 0;
+                    int sameCount = 0;
+                    int skipCount = 0;
+                    ExtendedProteinRegion.GenomeIterator iter = new ExtendedProteinRegion.GenomeIterator(genome, this.maxUpstream);
+                    while (iter.hasNext()) {
+                        // Get this region and try to find the function in the function map.
+                        ExtendedProteinRegion region = iter.next();
+                        Feature feat = region.getFeature();
+                        Function fun = this.funMap.getByName(feat.getFunction());
+                        if (fun == null)
+                            badFunCount++;
                         else {
-                            // Here we have an eligible close feature.  Add this region to its alignment list.  We always
-                            // count a wild strain, but we skip anything that has the same protein.
-                            Feature featBase = closest.getFeature();
-                            String protBase = featBase.getProteinTranslation();
-                            String upstreamDnaBase = closest.getUpstreamDna();
-                            MarkedRegionList alignment = this.alignMap.get(featBase);
-                            if (alignment == null)
-                                skipCount++;
+                            // Here we found it.  If we didn't find it, then it won't match anything anyway.
+                            ExtendedProteinRegion closest;
+                            if (sketches != null)
+                                closest = sketches.getClosest(fun.getId(), region, this.getMaxDist());
                             else {
-                                alignment.add(region);
-                                if (! wild) {
-                                    if (protBase.contentEquals(feat.getProteinTranslation()) && upstreamDnaBase.contentEquals(region.getUpstreamDna()))
-                                        sameCount++;
-                                    else {
-                                        alignment.increment();
-                                        foundCount++;
+                                RegionList regions = baseMap.get(fun.getId());
+                                closest = regions.getClosest(region, this.getMaxDist());
+                            }
+                            if (closest == null)
+                                tooFarCount++;
+                            else {
+                                // Here we have an eligible close feature.  Add this region to its alignment list.  We always
+                                // count a wild strain, but we skip anything that has the same protein.
+                                Feature featBase = closest.getFeature();
+                                String protBase = featBase.getProteinTranslation();
+                                String upstreamDnaBase = closest.getUpstreamDna();
+                                MarkedRegionList alignment = this.alignMap.get(featBase);
+                                if (alignment == null)
+                                    skipCount++;
+                                else {
+                                    alignment.add(region);
+                                    this.upstreamLengths.put(region.getLabel(), region.getUpstreamDistance());
+                                    if (! wild) {
+                                        if (protBase.contentEquals(feat.getProteinTranslation()) && upstreamDnaBase.contentEquals(region.getUpstreamDna()))
+                                            sameCount++;
+                                        else {
+                                            alignment.increment();
+                                            foundCount++;
+                                        }
                                     }
                                 }
                             }
                         }
                     }
+                    log.info("{} regions queued for alignment.  {} had unusual functions, {} were too far to align.",
+                            foundCount, badFunCount, tooFarCount);
+                    log.info("{} regions were functionally identical to the base, {} skipped by filtering.",
+                            sameCount, skipCount);
                 }
-                log.info("{} regions queued for alignment.  {} had unusual functions, {} were too far to align.",
-                        foundCount, badFunCount, tooFarCount);
-                log.info("{} regions were functionally identical to the base, {} skipped by filtering.",
-                        sameCount, skipCount);
             }
         }
     }
 
+    /**
+     * Use the input directory's manifest to choose the genome files to load.  The base genome is left out, and
+     * any problems with the wild genome IDs or the ordering file are reported before a genome is parsed.
+     *
+     * @return the list of genome files to load
+     *
+     * @throws IOException
+     */
+    private List<File> selectInputFiles() throws IOException {
+        if (! this.inDir.isDirectory()) {
+            // An archive has no manifest, so the base genome is skipped when it is loaded.
+            log.info("Genomes will be read from archive {}.", this.inDir);
+            return Collections.singletonList(this.inDir);
+        }
+        log.info("Scanning input directory {}.", this.inDir);
+        GenomeManifest manifest = new GenomeManifest(this.inDir);
+        List<File> retVal = new ArrayList<File>(manifest.size());
+        long totalSize = 0;
+        long totalPegs = 0;
+        for (GenomeManifest.Entry entry : manifest) {
+            if (entry.getGenomeId().equals(this.baseId))
+                log.info("Base genome found in input directory at {}-- skipped.", entry.getFile());
+            else {
+                retVal.add(entry.getFile());
+                totalSize += entry.getSize();
+                totalPegs += entry.getPegCount();
+            }
+        }
+        log.info("{} genomes with {} pegs and {} megabytes of GTO data will be loaded.", retVal.size(), totalPegs,
+                totalSize / (1024 * 1024));
+        for (String altId : this.altIds) {
+            if (manifest.getGenome(altId) == null)
+                log.warn("Wild genome {} is not in the input directory.", altId);
+        }
+        if (this.genomeLabels != null) {
+            for (GenomeLabel label : this.genomeLabels) {
+                if (! label.getId().equals(this.baseId) && manifest.getGenome(label.getId()) == null)
+                    log.warn("Genome {} from the ordering file is not in the input directory.", label.getId());
+            }
+        }
+        return retVal;
+    }
+
     /**
      * @return TRUE if this region is acceptable, FALSE if it is rejected by the feature filters
      *
@@ -0,0 +1,133 @@
+/**
+ *
+ */
+package org.theseed.genome.align;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.theseed.genome.Genome;
+
+/**
+ * This object loads genomes from a sequence of GTO sources using a pool of loader threads.  The genomes are returned
+ * by the iterator in the same order as the sources, no matter which finishes loading first, so the client sees exactly
+ * the sequence it would have seen with serial loading.  Compressed sources are decompressed by the loader threads.
+ * At most one genome per loader thread is read ahead of the client, which limits the memory used by genomes waiting
+ * to be processed.
+ *
+ * The loader can only be iterated once.  Closing it cancels any loads still in progress.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class GenomeLoader implements Iterable<Genome>, AutoCloseable {
+
+    // FIELDS
+    /** logging facility */
+    protected static Logger log = LoggerFactory.getLogger(GenomeLoader.class);
+    /** iterator through the sources to load */
+    private Iterator<GtoSource> sources;
+    /** loader thread pool */
+    private ExecutorService pool;
+    /** queue of genomes being loaded, in file order */
+    private Deque<Future<Genome>> pending;
+    /** maximum number of genomes being loaded at once */
+    private int window;
+
+    /**
+     * Create a genome loader.
+     *
+     * @param sources		sources of the genomes to load, in the desired order
+     * @param threads		number of loader threads
+     */
+    public GenomeLoader(Iterable<GtoSource> sources, int threads) {
+        this.sources = sources.iterator();
+        this.pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread retVal = new Thread(r, "genome-loader");
+            retVal.setDaemon(true);
+            return retVal;
+        });
+        this.pending = new ArrayDeque<Future<Genome>>(threads);
+        this.window = threads;
+        log.info("Loading genomes using {} threads.", threads);
+    }
+
+    /**
+     * @return the GTO files in a directory, compressed or not, sorted by name
+     *
+     * @param dir	directory containing the GTO files
+     */
+    public static List<File> listDirectory(File dir) {
+        File[] gtoFiles = dir.listFiles(x -> x.isFile() && GtoSource.isGtoName(x.getName()));
+        List<File> retVal = Arrays.stream(gtoFiles).sorted().collect(Collectors.toList());
+        return retVal;
+    }
+
+    /**
+     * Submit genome sources for loading until the window is full.
+     */
+    private void fill() {
+        while (this.pending.size() < this.window && this.sources.hasNext()) {
+            GtoSource source = this.sources.next();
+            this.pending.add(this.pool.submit(source::load));
+        }
+    }
+
+    @Override
+    public Iterator<Genome> iterator() {
+        return new Iterator<Genome>() {
+
+            @Override
+            public boolean hasNext() {
+                GenomeLoader.this.fill();
+                return ! GenomeLoader.this.pending.isEmpty();
+            }
+
+            @Override
+            public Genome next() {
+                if (! this.hasNext())
+                    throw new NoSuchElementException();
+                Future<Genome> result = GenomeLoader.this.pending.remove();
+                // Start the next load before we wait for this one.
+                GenomeLoader.this.fill();
+                try {
+                    return result.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Genome loading interrupted.", e);
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException)
+                        throw new UncheckedIOException((IOException) cause);
+                    if (cause instanceof RuntimeException)
+                        throw (RuntimeException) cause;
+                    throw new IllegalStateException("Error loading genome.", cause);
+                }
+            }
+
+        };
+    }
+
+    @Override
+    public void close() {
+        for (Future<Genome> result : this.pending)
+            result.cancel(true);
+        this.pending.clear();
+        this.pool.shutdownNow();
+    }
+
+}
@@ -0,0 +1,253 @@
+/**
+ *
+ */
+package org.theseed.genome.align;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.theseed.io.TabbedLineReader;
+
+/**
+ * This object manages a manifest for a directory of GTO files.  The manifest is a tab-delimited sidecar file in the
+ * directory that lists, for each GTO, the genome ID and name, the file name, size, modification time and checksum,
+ * and the number of pegs.  It allows a client to decide which genomes to load, and how much memory they will need,
+ * without parsing any of them.
+ *
+ * When the manifest is opened, it is refreshed against the directory.  A file whose size and modification time are
+ * unchanged is trusted.  Otherwise its checksum is recomputed, and only if the checksum has changed is the file
+ * scanned (with the lightweight GtoPegReader) for its genome data.  The manifest is rewritten only if something
+ * changed.  If the directory is not writable, the refreshed manifest is used but not saved.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class GenomeManifest implements Iterable<GenomeManifest.Entry> {
+
+    // FIELDS
+    /** logging facility */
+    protected static Logger log = LoggerFactory.getLogger(GenomeManifest.class);
+    /** name of the manifest file */
+    public static final String MANIFEST_NAME = "genomes.manifest.tbl";
+    /** list of entries, in file name order */
+    private List<Entry> entries;
+    /** number of files scanned during the refresh */
+    private int scanCount;
+
+    /**
+     * This object describes a single GTO file in the manifest.
+     */
+    public static class Entry {
+
+        /** ID of the genome */
+        private String genomeId;
+        /** name of the genome */
+        private String name;
+        /** GTO file */
+        private File file;
+        /** size of the file in bytes */
+        private long size;
+        /** modification time of the file */
+        private long modified;
+        /** CRC-32 checksum of the file */
+        private long checksum;
+        /** number of pegs in the genome */
+        private int pegCount;
+
+        /**
+         * @return the genome ID
+         */
+        public String getGenomeId() {
+            return this.genomeId;
+        }
+
+        /**
+         * @return the genome name
+         */
+        public String getName() {
+            return this.name;
+        }
+
+        /**
+         * @return the GTO file
+         */
+        public File getFile() {
+            return this.file;
+        }
+
+        /**
+         * @return the file size in bytes
+         */
+        public long getSize() {
+            return this.size;
+        }
+
+        /**
+         * @return the CRC-32 checksum of the file
+         */
+        public long getChecksum() {
+            return this.checksum;
+        }
+
+        /**
+         * @return the number of pegs in the genome
+         */
+        public int getPegCount() {
+            return this.pegCount;
+        }
+
+    }
+
+    /**
+     * Open the manifest for a genome directory, creating or refreshing it as needed.
+     *
+     * @param dir		directory of GTO files
+     *
+     * @throws IOException
+     */
+    public GenomeManifest(File dir) throws IOException {
+        File manifestFile = new File(dir, MANIFEST_NAME);
+        // Read the old manifest, if any.
+        Map<String, Entry> oldEntries = new HashMap<String, Entry>();
+        if (manifestFile.canRead()) {
+            try (TabbedLineReader inStream = new TabbedLineReader(manifestFile)) {
+                for (TabbedLineReader.Line line : inStream) {
+                    Entry entry = new Entry();
+                    entry.genomeId = line.get(0);
+                    entry.name = line.get(1);
+                    entry.file = new File(dir, line.get(2));
+                    entry.size = Long.parseLong(line.get(3));
+                    entry.modified = Long.parseLong(line.get(4));
+                    entry.checksum = Long.parseLong(line.get(5), 16);
+                    entry.pegCount = Integer.parseInt(line.get(6));
+                    oldEntries.put(line.get(2), entry);
+                }
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                log.warn("Manifest file {} is invalid and will be rebuilt: {}", manifestFile, e.toString());
+                oldEntries.clear();
+            }
+        }
+        // Refresh it against the directory.
+        List<File> files = GenomeLoader.listDirectory(dir);
+        this.entries = new ArrayList<Entry>(files.size());
+        this.scanCount = 0;
+        boolean changed = (files.size() != oldEntries.size());
+        for (File file : files) {
+            Entry entry = oldEntries.get(file.getName());
+            long size = file.length();
+            long modified = file.lastModified();
+            if (entry == null || entry.size != size || entry.modified != modified) {
+                changed = true;
+                long checksum = checksum(file);
+                if (entry == null || entry.size != size || entry.checksum != checksum) {
+                    entry = new Entry();
+                    entry.file = file;
+                    entry.checksum = checksum;
+                    GtoPegReader genome = new GtoPegReader(file);
+                    entry.genomeId = genome.getId();
+                    entry.name = genome.getName();
+                    entry.pegCount = genome.getPegs().size();
+                    this.scanCount++;
+                    log.info("Manifest entry for {} updated from {}.", genome, file);
+                }
+                entry.size = size;
+                entry.modified = modified;
+            }
+            this.entries.add(entry);
+        }
+        log.info("Manifest for {} has {} genomes, {} scanned.", dir, this.entries.size(), this.scanCount);
+        if (changed) {
+            try {
+                this.save(manifestFile);
+            } catch (IOException e) {
+                log.warn("Could not save manifest file {}: {}", manifestFile, e.toString());
+            }
+        }
+    }
+
+    /**
+     * Write the manifest to a file.
+     *
+     * @param manifestFile		output file
+     *
+     * @throws IOException
+     */
+    private void save(File manifestFile) throws IOException {
+        File tempFile = new File(manifestFile.getParentFile(), manifestFile.getName() + ".tmp");
+        try (PrintWriter writer = new PrintWriter(tempFile)) {
+            writer.println("genome_id\tgenome_name\tfile\tsize\tmodified\tchecksum\tpegs");
+            for (Entry entry : this.entries)
+                writer.format("%s\t%s\t%s\t%d\t%d\t%08x\t%d%n", entry.genomeId, entry.name, entry.file.getName(),
+                        entry.size, entry.modified, entry.checksum, entry.pegCount);
+            if (writer.checkError())
+                throw new IOException("Error writing " + tempFile + ".");
+        }
+        // Replace the old manifest all at once, so a reader never sees a partial file.
+        if (! tempFile.renameTo(manifestFile)) {
+            tempFile.delete();
+            throw new IOException("Could not replace manifest file " + manifestFile + ".");
+        }
+    }
+
+    /**
+     * @return the CRC-32 checksum of a file
+     *
+     * @param file		file to check
+     *
+     * @throws IOException
+     */
+    private static long checksum(File file) throws IOException {
+        try (CheckedInputStream inStream = new CheckedInputStream(new BufferedInputStream(new FileInputStream(file)), new CRC32())) {
+            byte[] buffer = new byte[65536];
+            while (inStream.read(buffer) >= 0);
+            return inStream.getChecksum().getValue();
+        }
+    }
+
+    /**
+     * @return the entry for the genome with the specified ID, or NULL if it is not in the directory
+     *
+     * @param genomeId	ID of the desired genome
+     */
+    public Entry getGenome(String genomeId) {
+        Entry retVal = null;
+        for (int i = 0; retVal == null && i < this.entries.size(); i++) {
+            Entry entry = this.entries.get(i);
+            if (entry.genomeId.equals(genomeId))
+                retVal = entry;
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the number of genomes in the manifest
+     */
+    public int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * @return the number of files scanned during the refresh
+     */
+    public int getScanCount() {
+        return this.scanCount;
+    }
+
+    @Override
+    public Iterator<Entry> iterator() {
+        return this.entries.iterator();
+    }
+
+}
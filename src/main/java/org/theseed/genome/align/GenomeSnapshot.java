@@ -0,0 +1,186 @@
+/**
+ *
+ */
+package org.theseed.genome.align;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.theseed.genome.Feature;
+import org.theseed.genome.Genome;
+import org.theseed.locations.Location;
+
+/**
+ * This object is a binary snapshot of the peg data in a genome.  It contains the genome ID and name and a peg table with
+ * the ID, function, protein and location of each peg, which is everything the diff command needs.  The diff command
+ * is the only one that reads snapshots; the alignment commands need contig DNA and full features, so they still read
+ * GTOs.  Every peg is used by the diff command, so the snapshot is decoded in a single buffered pass, which is much
+ * faster than parsing the JSON.
+ *
+ * The file begins with a magic number and a version, followed by the genome ID and name and then the peg table.
+ * Strings are stored as a byte length followed by UTF-8 bytes, with a length of -1 indicating NULL.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class GenomeSnapshot implements IPegGenome {
+
+    // FIELDS
+    /** magic number identifying a snapshot file ("GSNP") */
+    private static final int MAGIC = 0x47534e50;
+    /** current snapshot format version */
+    private static final int VERSION = 3;
+    /** ID of the genome */
+    private String id;
+    /** name of the genome */
+    private String name;
+    /** list of pegs */
+    private List<GtoPegReader.Peg> pegs;
+
+    /**
+     * Load a genome snapshot from a file.
+     *
+     * @param snapFile	snapshot file to load
+     *
+     * @throws IOException
+     */
+    public GenomeSnapshot(File snapFile) throws IOException {
+        try (DataInputStream inStream = new DataInputStream(new BufferedInputStream(new FileInputStream(snapFile), 65536))) {
+            if (inStream.readInt() != MAGIC)
+                throw new IOException("File " + snapFile + " is not a genome snapshot.");
+            int version = inStream.readInt();
+            if (version != VERSION)
+                throw new IOException("Snapshot file " + snapFile + " has unsupported version " + version + ".");
+            this.id = readString(inStream);
+            this.name = readString(inStream);
+            // Read the peg table.
+            int nPegs = inStream.readInt();
+            this.pegs = new ArrayList<GtoPegReader.Peg>(nPegs);
+            for (int i = 0; i < nPegs; i++) {
+                String fid = readString(inStream);
+                String function = readString(inStream);
+                String protein = readString(inStream);
+                String contigId = readString(inStream);
+                char strand = (char) inStream.readByte();
+                int left = inStream.readInt();
+                int right = inStream.readInt();
+                this.pegs.add(new GtoPegReader.Peg(fid, function, protein, contigId, strand, left, right));
+            }
+        }
+    }
+
+    /**
+     * Write a snapshot of a genome to a file.
+     *
+     * @param genome		genome to save
+     * @param snapFile		output snapshot file
+     *
+     * @throws IOException
+     */
+    public static void save(Genome genome, File snapFile) throws IOException {
+        try (DataOutputStream outStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(snapFile), 65536))) {
+            outStream.writeInt(MAGIC);
+            outStream.writeInt(VERSION);
+            writeString(outStream, genome.getId());
+            writeString(outStream, genome.getName());
+            // Write the peg table.
+            Collection<Feature> pegList = genome.getPegs();
+            outStream.writeInt(pegList.size());
+            for (Feature peg : pegList) {
+                Location loc = peg.getLocation();
+                writeString(outStream, peg.getId());
+                String function = peg.getPegFunction();
+                writeString(outStream, (function == null ? "" : function));
+                writeString(outStream, peg.getProteinTranslation());
+                writeString(outStream, loc.getContigId());
+                outStream.writeByte(loc.getDir());
+                outStream.writeInt(loc.getLeft());
+                outStream.writeInt(loc.getRight());
+            }
+        }
+    }
+
+    /**
+     * @return TRUE if the specified file is a genome snapshot
+     *
+     * @param file		file to check
+     *
+     * @throws IOException
+     */
+    public static boolean isSnapshot(File file) throws IOException {
+        boolean retVal = false;
+        if (file.length() >= 8) {
+            try (DataInputStream inStream = new DataInputStream(new FileInputStream(file))) {
+                retVal = (inStream.readInt() == MAGIC);
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * Write a string to a snapshot output stream.
+     *
+     * @param outStream		output stream
+     * @param string		string to write, or NULL
+     *
+     * @throws IOException
+     */
+    private static void writeString(DataOutputStream outStream, String string) throws IOException {
+        if (string == null)
+            outStream.writeInt(-1);
+        else {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            outStream.writeInt(bytes.length);
+            outStream.write(bytes);
+        }
+    }
+
+    /**
+     * @return the next string in a snapshot input stream, or NULL if a null string is stored there
+     *
+     * @param inStream		input stream
+     *
+     * @throws IOException
+     */
+    private static String readString(DataInputStream inStream) throws IOException {
+        int len = inStream.readInt();
+        String retVal = null;
+        if (len >= 0) {
+            byte[] bytes = new byte[len];
+            inStream.readFully(bytes);
+            retVal = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return retVal;
+    }
+
+    @Override
+    public String getId() {
+        return this.id;
+    }
+
+    @Override
+    public String getName() {
+        return this.name;
+    }
+
+    @Override
+    public List<GtoPegReader.Peg> getPegs() {
+        return this.pegs;
+    }
+
+    @Override
+    public String toString() {
+        return this.id + " (" + this.name + ")";
+    }
+
+}
@@ -22,8 +22,9 @@ import org.theseed.locations.Location;
 import org.theseed.proteins.Function;
 import org.theseed.proteins.FunctionMap;
 import org.theseed.reports.MultiAlignReporter;
+import org.theseed.sequence.PackedContigStore;
 import org.theseed.sequence.Sequence;
-import org.theseed.sequence.clustal.ClustalPipeline;
+import org.theseed.sequence.align.MultiAligner;
 
 /**
  * This command creates alignments for a list of genomes.  The DNA sequences will be organized by functional assignment and then
@@ -31,7 +32,8 @@ import org.theseed.sequence.clustal.ClustalPipeline;
  * will be considered.  At least one sequence must be in the first genome, as well.
  *
  * The positional parameters are the name of the file containing the first genome, then the names of the files containing the other
- * genomes.  The alignments will be written to the specified output file.
+ * genomes.  The alignments will be written to the specified output file.  The other genomes can also be given as directories
+ * or as zip or tar archives of GTOs, and any GTO can be gzip-compressed.
  *
  * The command-line options are as follows.
  *
@@ -46,6 +48,20 @@ import org.theseed.sequence.clustal.ClustalPipeline;
  * --alt		ID of a genome other than the base that is to be used as an alternate base; a snip is only output if it does not
  * 				match the base or any of the alternates
  * --upstream	check for illusory indels
+ * --threads	initial number of alignments to run concurrently; the default is the number of processors
+ * --minThreads	minimum number of concurrent alignments when adjusting to the system load; the default is the initial number
+ * --maxThreads	maximum number of concurrent alignments when adjusting to the system load; the default is the initial number
+ * --lookahead	maximum number of alignments queued ahead of output; the default is 4 per maximum thread
+ * --aligner	name of the aligner to use (clustal, java, stub, or any other installed provider); the default is clustal
+ * --alignMode	alignment strategy (PROGRESSIVE for a full multiple alignment, STAR for pairwise alignments to the base,
+ * 				ANCHOR for full alignments between shared kmer anchors)
+ * --alignSpace	space for aligning coding sequences (DNA or PROTEIN); the default is DNA
+ * --cacheDir	directory for cached alignments; the default is "alignCache" in the working directory
+ * --cacheSize	maximum size of the alignment cache, in megabytes
+ * --noCache	if specified, alignments will not be cached
+ * --timeout	maximum number of seconds for an alignment attempt; the default is 0 (no limit)
+ * --retries	number of times to retry a failed or timed-out alignment; the default is 1
+ * --fallback	strategy when all alignment attempts fail (STAR, UNGAPPED, or SKIP); the default is STAR
  *
  * @author Bruce Parrello
  *
@@ -61,10 +77,12 @@ public class GtoAlignProcessor extends BaseAlignProcessor {
     private Map<String, SequenceList> sequenceMap;
     /** base genome */
     private Genome baseGenome;
-    /** map of genome IDs to other genomes */
-    private Map<String, Genome> genomeMap;
+    /** map of genome IDs to packed contig DNA, for upstream checks; the stores are shared with the report */
+    private Map<String, PackedContigStore> contigMap;
     /** number of upstream region recaptures */
     private int recaptures;
+    /** number of alignments output */
+    private int alignCount;
 
     // COMMAND-LINE OPTIONS
 
@@ -90,7 +108,7 @@ public class GtoAlignProcessor extends BaseAlignProcessor {
     private File gtoBaseFile;
 
     /** comparative genomes */
-    @Argument(index = 1, metaVar = "gto2 gto3 ...", usage = "genomes to align to primary", multiValued = true, required = true)
+    @Argument(index = 1, metaVar = "gto2 gto3 ...", usage = "genomes (or genome archives) to align to primary", multiValued = true, required = true)
     private List<File> gtoFiles;
 
     protected void setProcessDefaults() {
@@ -104,18 +122,15 @@ public class GtoAlignProcessor extends BaseAlignProcessor {
         if (! this.gtoBaseFile.canRead())
             throw new FileNotFoundException("Genome file " + this.gtoBaseFile + " not found or unreadable.");
         for (File gtoFile : this.gtoFiles) {
-            if (! gtoFile.canRead())
+            if (! GtoBundle.isValidInput(gtoFile))
                 throw new FileNotFoundException("Genome file " + gtoFile + " not found or unreadable.");
         }
     }
 
     @Override
     protected void runCommand() throws Exception {
-        // Create the temporary FASTA file.
-        File tempFile = File.createTempFile("align", ".fna", this.getWorkDir());
-        tempFile.deleteOnExit();
-        // Create the genome map.
-        this.genomeMap = new HashMap<String, Genome>(this.gtoFiles.size());
+        // Create the contig map.
+        this.contigMap = new HashMap<String, PackedContigStore>(this.gtoFiles.size());
         // Create the function maps.
         log.info("Initializing function maps.");
         this.functionMap = new FunctionMap();
@@ -126,56 +141,81 @@ public class GtoAlignProcessor extends BaseAlignProcessor {
             this.processBase(this.gtoBaseFile);
             // Initialize the output report.
             reporter.openReport(this.baseGenome, this.altBases);
-            // Loop through the other genomes.
-            for (File gtoFile : this.gtoFiles) {
-                Genome genome = new Genome(gtoFile);
-                reporter.registerGenome(genome);
-                log.info("Scanning genome {}.", genome);
-                if (this.upstreamCheck)
-                    this.genomeMap.put(genome.getId(), genome);
-                // Loop through the genome's pegs.
-                int kept = 0;
-                for (Feature feat : genome.getPegs()) {
-                    // Get the function and look for a sequence list.
-                    String function = feat.getFunction();
-                    Function fun = this.functionMap.getByName(function);
-                    if (fun != null) {
-                        SequenceList seqs = this.sequenceMap.get(fun.getId());
-                        if (seqs != null) {
-                            if (this.addFeature(seqs, feat))
-                                kept++;
+            reporter.registerGenome(this.baseGenome, this.packContigs(this.baseGenome, reporter));
+            // Loop through the other genomes.  These can be compressed or in archives.
+            try (GtoBundle bundle = new GtoBundle(this.gtoFiles)) {
+                for (GtoSource source : bundle) {
+                    Genome genome = source.load();
+                    reporter.registerGenome(genome, this.packContigs(genome, reporter));
+                    log.info("Scanning genome {}.", genome);
+                    // Loop through the genome's pegs.
+                    int kept = 0;
+                    for (Feature feat : genome.getPegs()) {
+                        // Get the function and look for a sequence list.
+                        String function = feat.getFunction();
+                        Function fun = this.functionMap.getByName(function);
+                        if (fun != null) {
+                            SequenceList seqs = this.sequenceMap.get(fun.getId());
+                            if (seqs != null) {
+                                if (this.addFeature(seqs, feat))
+                                    kept++;
+                            }
                         }
                     }
+                    log.info("{} sequences kept from {}.", kept, genome);
                 }
-                log.info("{} sequences kept from {}.", kept, genome);
             }
-            int alignCount = 0;
-            // Loop through the alignments
-            for (Map.Entry<String, SequenceList> alignRequest : this.sequenceMap.entrySet()) {
-                // Verify that this alignment is big enough and has variations.
-                SequenceList seqs = alignRequest.getValue();
-                if (seqs.size() >= 3 && seqs.getMaxDist() > 0.0) {
-                    String function = this.functionMap.getName(alignRequest.getKey());
-                    log.info("Processing alignment for {}.", function);
-                    // Save the sequences.
-                    seqs.save(tempFile);
-                    // Process the alignment.
-                    ClustalPipeline aligner = new ClustalPipeline(tempFile);
-                    List<Sequence> alignment = aligner.run();
-                    if (this.upstreamCheck)
-                        this.checkUpstream(alignment);
-                    reporter.writeAlignment(seqs.getBaseFid(), function, alignment);
-                    alignCount++;
+            this.alignCount = 0;
+            // Loop through the alignments.  The executor delivers the results in the order they were submitted.
+            try (AlignmentExecutor<String> executor = this.createExecutor((funId, alignment, fallback) ->
+                    this.processAlignment(reporter, funId, alignment))) {
+                for (Map.Entry<String, SequenceList> alignRequest : this.sequenceMap.entrySet()) {
+                    // Verify that this alignment is big enough and has variations.
+                    SequenceList seqs = alignRequest.getValue();
+                    if (seqs.size() >= 3 && seqs.getMaxDist() > 0.0) {
+                        log.info("Queueing alignment for {}.", this.functionMap.getName(alignRequest.getKey()));
+                        executor.submit(alignRequest.getKey(), seqs.getSequences());
+                    }
                 }
+                executor.drain();
             }
             // Finish the report.
             reporter.closeReport();
-            log.info("{} alignments output.", alignCount);
+            log.info("{} alignments output.", this.alignCount);
             if (this.upstreamCheck)
                 log.info("{} upstream regions recaptured.", this.recaptures);
         }
     }
 
+    @Override
+    protected MultiAligner wrapAligner(MultiAligner aligner) {
+        MultiAligner retVal = aligner;
+        // The sequences are all coding, so they only need special handling in protein space.
+        if (this.getAlignSpace() == MultiAligner.Space.PROTEIN)
+            retVal = this.getAlignSpace().create(aligner, x -> 0);
+        return retVal;
+    }
+
+    /**
+     * Write a completed alignment to the report.
+     *
+     * @param reporter		multi-alignment reporter to receive the alignment
+     * @param funId			ID of the function whose sequences were aligned
+     * @param alignment		list of aligned sequences, or NULL if the alignment failed and was skipped
+     */
+    private void processAlignment(MultiAlignReporter reporter, String funId, List<Sequence> alignment) {
+        String function = this.functionMap.getName(funId);
+        if (alignment == null)
+            log.warn("No alignment produced for {}.", function);
+        else {
+            log.info("Processing alignment for {}.", function);
+            if (this.upstreamCheck)
+                this.checkUpstream(alignment);
+            reporter.writeAlignment(this.sequenceMap.get(funId).getBaseFid(), function, alignment);
+            this.alignCount++;
+        }
+    }
+
     /**
      * Add upstream sequences to fix indels caused by differing start calls.
      *
@@ -198,12 +238,12 @@ public class GtoAlignProcessor extends BaseAlignProcessor {
                 // What we do now is find the upstream sequence that corresponds to the indels at the front.  If it corresponds with
                 // the prefix of a full sequence, we plug it in.
                 int indelLength = StringUtils.indexOfAnyBut(frontedSeq.getSequence(), '-');
-                // Find the genome for this sequence.
-                Genome genome = this.genomeMap.get(Feature.genomeOf(frontedSeq.getLabel()));
+                // Find the contigs for this sequence's genome.
+                PackedContigStore contigs = this.contigMap.get(Feature.genomeOf(frontedSeq.getLabel()));
                 // Compute the upstream sequence.
                 Location loc = Location.fromString(frontedSeq.getComment());
                 Location loc2 = loc.upstream(indelLength);
-                String upstream = genome.getDna(loc2);
+                String upstream = contigs.getDna(loc2);
                 if (upstream.length() == indelLength) {
                     // Here we have a valid upstream region.  Search for it in the full sequences.
                     boolean found = false;
@@ -218,7 +258,7 @@ public class GtoAlignProcessor extends BaseAlignProcessor {
                         frontedSeq.setSequence(upstream + tail);
                         log.info("Upstream region added to {}.", frontedSeq.getLabel());
                         // Update the location, too.
-                        int contigLen = genome.getContig(loc.getContigId()).length();
+                        int contigLen = contigs.getLength(loc.getContigId());
                         loc2 = loc.expandUpstream(indelLength, contigLen);
                         frontedSeq.setComment(loc2.toString());
                         // Count the recapture.
@@ -241,11 +281,9 @@ public class GtoAlignProcessor extends BaseAlignProcessor {
         // This will count the total features kept.
         int kept = 0;
         // Read in the genome.
-        Genome genome = new Genome(gtoFile);
+        Genome genome = GtoSource.loadGenome(gtoFile);
         log.info("Scanning features from {}.", genome);
         this.baseGenome = genome;
-        if (this.upstreamCheck)
-            this.genomeMap.put(genome.getId(), genome);
         // Loop through the pegs.
         for (Feature feat : genome.getPegs()) {
             String function = feat.getFunction();
@@ -267,6 +305,25 @@ public class GtoAlignProcessor extends BaseAlignProcessor {
         log.info("{} functions found in {}, {} features kept.", this.sequenceMap.size(), genome, kept);
     }
 
+    /**
+     * Pack the contig DNA of a genome if the upstream check or the report needs it.  The genome is packed only
+     * once, and the same store is used by both.
+     *
+     * @param genome		genome whose contigs are needed
+     * @param reporter		report that will receive the genome
+     *
+     * @return the packed contigs, or NULL if nothing needs them
+     */
+    private PackedContigStore packContigs(Genome genome, MultiAlignReporter reporter) {
+        PackedContigStore retVal = null;
+        if (this.upstreamCheck || reporter.needsContigs()) {
+            retVal = new PackedContigStore(genome);
+            if (this.upstreamCheck)
+                this.contigMap.put(genome.getId(), retVal);
+        }
+        return retVal;
+    }
+
     /**
      * Add a new feature to a sequence list.
      *
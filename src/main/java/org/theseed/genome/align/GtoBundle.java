@@ -0,0 +1,205 @@
+/**
+ *
+ */
+package org.theseed.genome.align;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This object finds the GTOs in a list of input files.  Each input file can be a GTO (optionally gzip-compressed), a
+ * directory of GTOs, a zip archive, or a tar archive (optionally gzip-compressed).  The iterator returns a GtoSource
+ * for each GTO found, in input order.  Directory and zip entries are returned in name order, and tar entries in
+ * archive order.
+ *
+ * Archives are never extracted to disk.  Zip entries are decompressed when they are loaded, so a parallel loader can
+ * decompress several at once.  A tar archive can only be read sequentially, so each GTO entry is read into memory
+ * when the iterator reaches it, and only the parsing is parallel.  The whole uncompressed entry is buffered as a byte
+ * array until its genome is parsed; with a loader, up to one buffered entry per loader thread is held in addition to
+ * the genomes themselves, so a tar of very large GTOs needs memory to match.
+ *
+ * The bundle can only be iterated once.  Closing it closes any open archives.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class GtoBundle implements Iterable<GtoSource>, AutoCloseable {
+
+    // FIELDS
+    /** logging facility */
+    protected static Logger log = LoggerFactory.getLogger(GtoBundle.class);
+    /** input files not yet expanded */
+    private Deque<File> inputs;
+    /** sources found but not yet returned */
+    private Deque<GtoSource> ready;
+    /** open zip archives */
+    private List<ZipFile> zipFiles;
+    /** tar archive currently being read, or NULL if none */
+    private TarArchiveInputStream tarStream;
+    /** name of the tar archive currently being read */
+    private String tarName;
+
+    /**
+     * Create a bundle for a list of input files.
+     *
+     * @param files		list of GTO files, directories, and archives
+     */
+    public GtoBundle(List<File> files) {
+        this.inputs = new ArrayDeque<File>(files);
+        this.ready = new ArrayDeque<GtoSource>();
+        this.zipFiles = new ArrayList<ZipFile>();
+        this.tarStream = null;
+    }
+
+    /**
+     * @return TRUE if the specified file is an archive that may contain GTOs
+     *
+     * @param file		file to check
+     */
+    public static boolean isArchive(File file) {
+        String name = file.getName();
+        return name.endsWith(".zip") || isTar(name);
+    }
+
+    /**
+     * @return TRUE if the specified file name is that of a tar archive
+     *
+     * @param name		file name to check
+     */
+    private static boolean isTar(String name) {
+        return name.endsWith(".tar") || name.endsWith(".tar.gz") || name.endsWith(".tgz");
+    }
+
+    /**
+     * @return TRUE if the specified file can be used as a genome input (directory or readable file)
+     *
+     * @param file		file to check
+     */
+    public static boolean isValidInput(File file) {
+        // The name of a plain file is only used to decide how to open it, so a GTO can have any name.
+        return file.isDirectory() || file.canRead();
+    }
+
+    /**
+     * Find more sources.  On return, either a source is ready or the inputs are exhausted.
+     *
+     * @throws IOException
+     */
+    private void advance() throws IOException {
+        while (this.ready.isEmpty() && (this.tarStream != null || ! this.inputs.isEmpty())) {
+            if (this.tarStream != null)
+                this.readTarEntry();
+            else {
+                File file = this.inputs.remove();
+                String name = file.getName();
+                if (file.isDirectory()) {
+                    for (File gtoFile : GenomeLoader.listDirectory(file))
+                        this.ready.add(new GtoSource.FileSource(gtoFile));
+                } else if (name.endsWith(".zip")) {
+                    ZipFile zipFile = new ZipFile(file);
+                    this.zipFiles.add(zipFile);
+                    List<ZipEntry> entries = new ArrayList<ZipEntry>();
+                    Collections.list(zipFile.entries()).stream()
+                            .filter(x -> ! x.isDirectory() && GtoSource.isGtoName(x.getName()))
+                            .forEach(x -> entries.add(x));
+                    entries.sort(Comparator.comparing(ZipEntry::getName));
+                    log.info("{} GTOs found in zip archive {}.", entries.size(), file);
+                    for (ZipEntry entry : entries)
+                        this.ready.add(new GtoSource.ZipSource(zipFile, entry));
+                } else if (isTar(name)) {
+                    log.info("Reading tar archive {}.", file);
+                    InputStream inStream = new BufferedInputStream(new FileInputStream(file), 65536);
+                    if (! name.endsWith(".tar"))
+                        inStream = new GZIPInputStream(inStream, 65536);
+                    this.tarStream = new TarArchiveInputStream(inStream);
+                    this.tarName = file.toString();
+                } else
+                    this.ready.add(new GtoSource.FileSource(file));
+            }
+        }
+    }
+
+    /**
+     * Read the next entry from the current tar archive.  If it is a GTO, its content is saved as a source.  At the
+     * end of the archive, the archive is closed.
+     *
+     * @throws IOException
+     */
+    private void readTarEntry() throws IOException {
+        TarArchiveEntry entry = this.tarStream.getNextTarEntry();
+        if (entry == null) {
+            this.tarStream.close();
+            this.tarStream = null;
+        } else if (entry.isFile() && GtoSource.isGtoName(entry.getName())) {
+            byte[] content = IOUtils.toByteArray(this.tarStream);
+            this.ready.add(new GtoSource.MemorySource(this.tarName + ":" + entry.getName(), content));
+        }
+    }
+
+    @Override
+    public Iterator<GtoSource> iterator() {
+        return new Iterator<GtoSource>() {
+
+            @Override
+            public boolean hasNext() {
+                try {
+                    GtoBundle.this.advance();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return ! GtoBundle.this.ready.isEmpty();
+            }
+
+            @Override
+            public GtoSource next() {
+                if (! this.hasNext())
+                    throw new NoSuchElementException();
+                return GtoBundle.this.ready.remove();
+            }
+
+        };
+    }
+
+    @Override
+    public void close() {
+        // Each archive is closed separately, so that a failure on one does not leave the others open.
+        if (this.tarStream != null) {
+            try {
+                this.tarStream.close();
+            } catch (IOException e) {
+                log.warn("Error closing genome archive {}: {}", this.tarName, e.toString());
+            }
+            this.tarStream = null;
+        }
+        for (ZipFile zipFile : this.zipFiles) {
+            try {
+                zipFile.close();
+            } catch (IOException e) {
+                log.warn("Error closing genome archive {}: {}", zipFile.getName(), e.toString());
+            }
+        }
+        this.zipFiles.clear();
+    }
+
+}
@@ -0,0 +1,514 @@
+/**
+ *
+ */
+package org.theseed.genome.align;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This object reads a GTO file and extracts only the information needed to compare and align pegs: the genome ID and
+ * name and, for each peg, the ID, function, protein translation and location.  Everything else in the file,
+ * including the contigs, annotations, subsystems, quality data and the other feature types, is skipped by a streaming
+ * parser without building any objects for it, so reading a genome this way is much faster and uses much less memory
+ * than creating a full Genome.
+ *
+ * The peg objects have no connection to a Genome, so they cannot be used where a Feature is required.  In particular,
+ * the alignment commands still need full Genomes, because the extended protein regions they align are built from
+ * Features.  The reader serves the diff command, the genome manifest and genome snapshots (see GenomeSnapshot).  A peg
+ * without a location is skipped, since it has nothing to compare or align.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class GtoPegReader implements IPegGenome {
+
+    // FIELDS
+    /** ID of the genome */
+    private String id;
+    /** name of the genome */
+    private String name;
+    /** list of pegs */
+    private List<Peg> pegs;
+    /** input reader */
+    private Reader reader;
+    /** current lookahead character, or -1 at end of file */
+    private int ch;
+    /** buffer for building strings */
+    private StringBuilder buffer;
+
+    /**
+     * This object describes a single peg extracted from a GTO.
+     */
+    public static class Peg {
+
+        /** feature ID */
+        private String id;
+        /** functional assignment */
+        private String function;
+        /** protein translation */
+        private String protein;
+        /** ID of the contig containing the peg */
+        private String contigId;
+        /** strand of the peg */
+        private char strand;
+        /** leftmost position of the peg (1-based) */
+        private int left;
+        /** rightmost position of the peg (1-based) */
+        private int right;
+
+        /**
+         * Construct an empty peg.
+         */
+        Peg() {
+            this.function = "";
+        }
+
+        /**
+         * Construct a peg with all its data.
+         *
+         * @param id			feature ID
+         * @param function		functional assignment
+         * @param protein		protein translation, or NULL if there is none
+         * @param contigId		ID of the contig containing the peg
+         * @param strand		strand of the peg
+         * @param left			leftmost position of the peg (1-based)
+         * @param right			rightmost position of the peg (1-based)
+         */
+        Peg(String id, String function, String protein, String contigId, char strand, int left, int right) {
+            this.id = id;
+            this.function = function;
+            this.protein = protein;
+            this.contigId = contigId;
+            this.strand = strand;
+            this.left = left;
+            this.right = right;
+        }
+
+        /**
+         * @return the feature ID
+         */
+        public String getId() {
+            return this.id;
+        }
+
+        /**
+         * @return the functional assignment as it appears in the GTO, which may be empty or NULL
+         */
+        public String getFunction() {
+            return this.function;
+        }
+
+        /**
+         * @return the functional assignment, or "hypothetical protein" if there is none (as in Feature.getPegFunction)
+         */
+        public String getPegFunction() {
+            String retVal = this.function;
+            if (retVal == null || retVal.isEmpty())
+                retVal = "hypothetical protein";
+            return retVal;
+        }
+
+        /**
+         * @return the protein translation, or NULL if there is none
+         */
+        public String getProtein() {
+            return this.protein;
+        }
+
+        /**
+         * @return the ID of the contig containing the peg
+         */
+        public String getContigId() {
+            return this.contigId;
+        }
+
+        /**
+         * @return the strand of the peg ('+' or '-')
+         */
+        public char getStrand() {
+            return this.strand;
+        }
+
+        /**
+         * @return the leftmost position of the peg on the contig (1-based)
+         */
+        public int getLeft() {
+            return this.left;
+        }
+
+        /**
+         * @return the rightmost position of the peg on the contig (1-based)
+         */
+        public int getRight() {
+            return this.right;
+        }
+
+    }
+
+    /**
+     * Read the pegs from a GTO file.  The file can be gzip-compressed.
+     *
+     * @param gtoFile	GTO file to read
+     *
+     * @throws IOException
+     */
+    public GtoPegReader(File gtoFile) throws IOException {
+        this(GtoSource.openFile(gtoFile));
+    }
+
+    /**
+     * Read the pegs from a GTO input stream.  The stream is closed when the reading is done.
+     *
+     * @param gtoStream		input stream containing the GTO
+     *
+     * @throws IOException
+     */
+    public GtoPegReader(InputStream gtoStream) throws IOException {
+        this.pegs = new ArrayList<Peg>();
+        this.buffer = new StringBuilder();
+        this.id = "";
+        this.name = "";
+        try (Reader inStream = new BufferedReader(new InputStreamReader(gtoStream, StandardCharsets.UTF_8), 65536)) {
+            this.reader = inStream;
+            this.ch = inStream.read();
+            this.expect('{');
+            if (! this.check('}')) {
+                do {
+                    String key = this.readString();
+                    this.expect(':');
+                    switch (key) {
+                    case "id" :
+                        this.id = this.readString();
+                        break;
+                    case "scientific_name" :
+                        this.name = this.readString();
+                        break;
+                    case "features" :
+                        this.readFeatures();
+                        break;
+                    default :
+                        this.skipValue();
+                    }
+                } while (this.check(','));
+                this.expect('}');
+            }
+        } finally {
+            this.reader = null;
+        }
+    }
+
+    /**
+     * Read the feature list and save the pegs.
+     *
+     * @throws IOException
+     */
+    private void readFeatures() throws IOException {
+        this.expect('[');
+        if (! this.check(']')) {
+            do {
+                Peg peg = new Peg();
+                String type = "";
+                this.expect('{');
+                if (! this.check('}')) {
+                    do {
+                        String key = this.readString();
+                        this.expect(':');
+                        switch (key) {
+                        case "id" :
+                            peg.id = this.readString();
+                            break;
+                        case "type" :
+                            type = this.readString();
+                            break;
+                        case "function" :
+                            peg.function = this.readString();
+                            break;
+                        case "protein_translation" :
+                            peg.protein = this.readString();
+                            break;
+                        case "location" :
+                            this.readLocation(peg);
+                            break;
+                        default :
+                            this.skipValue();
+                        }
+                    } while (this.check(','));
+                    this.expect('}');
+                }
+                // An empty or missing location leaves the contig ID NULL.
+                if ((type.equals("CDS") || type.equals("peg")) && peg.contigId != null)
+                    this.pegs.add(peg);
+            } while (this.check(','));
+            this.expect(']');
+        }
+    }
+
+    /**
+     * Read a feature location.  A location is a list of segments, each of which is a list containing the contig ID,
+     * the start position, the strand, and the length.  We keep the contig and strand of the first segment and the
+     * extent of all of them.  If there are no segments, the contig ID is left NULL.
+     *
+     * @param peg	peg whose location is being read
+     *
+     * @throws IOException
+     */
+    private void readLocation(Peg peg) throws IOException {
+        peg.left = Integer.MAX_VALUE;
+        peg.right = 0;
+        this.expect('[');
+        if (! this.check(']')) {
+            do {
+                this.expect('[');
+                String contigId = this.readString();
+                this.expect(',');
+                int start = this.readInt();
+                this.expect(',');
+                char strand = this.readString().charAt(0);
+                this.expect(',');
+                int len = this.readInt();
+                this.expect(']');
+                if (peg.contigId == null) {
+                    peg.contigId = contigId;
+                    peg.strand = strand;
+                }
+                // The start is the first base on the strand, so it is the right end of a minus-strand segment.
+                int left = (strand == '-' ? start - len + 1 : start);
+                peg.left = Math.min(peg.left, left);
+                peg.right = Math.max(peg.right, left + len - 1);
+            } while (this.check(','));
+            this.expect(']');
+        }
+    }
+
+    /**
+     * Advance to the next input character.
+     *
+     * @throws IOException
+     */
+    private void advance() throws IOException {
+        this.ch = this.reader.read();
+    }
+
+    /**
+     * Skip white space in the input.
+     *
+     * @throws IOException
+     */
+    private void skipSpace() throws IOException {
+        while (this.ch == ' ' || this.ch == '\n' || this.ch == '\r' || this.ch == '\t')
+            this.advance();
+    }
+
+    /**
+     * Consume a required punctuation character.
+     *
+     * @param c		expected character
+     *
+     * @throws IOException
+     */
+    private void expect(char c) throws IOException {
+        this.skipSpace();
+        if (this.ch != c)
+            throw new IOException("Invalid GTO file: expected '" + c + "' but found "
+                    + (this.ch < 0 ? "end of file" : "'" + (char) this.ch + "'") + ".");
+        this.advance();
+    }
+
+    /**
+     * Consume an optional punctuation character.
+     *
+     * @param c		character to check for
+     *
+     * @return TRUE if the character was found and consumed, else FALSE
+     *
+     * @throws IOException
+     */
+    private boolean check(char c) throws IOException {
+        this.skipSpace();
+        boolean retVal = (this.ch == c);
+        if (retVal)
+            this.advance();
+        return retVal;
+    }
+
+    /**
+     * Read a string value.  A null is returned as NULL.
+     *
+     * @return the string read
+     *
+     * @throws IOException
+     */
+    private String readString() throws IOException {
+        this.skipSpace();
+        String retVal;
+        if (this.ch == 'n') {
+            this.readScalar();
+            retVal = null;
+        } else {
+            this.buffer.setLength(0);
+            this.scanString(true);
+            retVal = this.buffer.toString();
+        }
+        return retVal;
+    }
+
+    /**
+     * Scan a quoted string, optionally saving its value in the buffer.
+     *
+     * @param save	TRUE to save the string's characters, FALSE to discard them
+     *
+     * @throws IOException
+     */
+    private void scanString(boolean save) throws IOException {
+        this.expect('"');
+        while (this.ch != '"') {
+            if (this.ch < 0)
+                throw new IOException("Invalid GTO file: unterminated string.");
+            char c = (char) this.ch;
+            if (c == '\\') {
+                this.advance();
+                switch (this.ch) {
+                case 'n' :
+                    c = '\n';
+                    break;
+                case 't' :
+                    c = '\t';
+                    break;
+                case 'r' :
+                    c = '\r';
+                    break;
+                case 'b' :
+                    c = '\b';
+                    break;
+                case 'f' :
+                    c = '\f';
+                    break;
+                case 'u' :
+                    char[] hex = new char[4];
+                    for (int i = 0; i < 4; i++) {
+                        this.advance();
+                        hex[i] = (char) this.ch;
+                    }
+                    c = (char) Integer.parseInt(String.valueOf(hex), 16);
+                    break;
+                default :
+                    c = (char) this.ch;
+                }
+            }
+            if (save)
+                this.buffer.append(c);
+            this.advance();
+        }
+        this.advance();
+    }
+
+    /**
+     * Read an unquoted scalar value (number, boolean, or null).
+     *
+     * @return the text of the scalar
+     *
+     * @throws IOException
+     */
+    private String readScalar() throws IOException {
+        this.skipSpace();
+        StringBuilder retVal = new StringBuilder(12);
+        while (this.ch >= 0 && this.ch != ',' && this.ch != '}' && this.ch != ']' && ! Character.isWhitespace(this.ch)) {
+            retVal.append((char) this.ch);
+            this.advance();
+        }
+        if (retVal.length() == 0)
+            throw new IOException("Invalid GTO file: missing value.");
+        return retVal.toString();
+    }
+
+    /**
+     * Read an integer value.  Some GTOs store location numbers as strings, so both forms are accepted.
+     *
+     * @return the integer read
+     *
+     * @throws IOException
+     */
+    private int readInt() throws IOException {
+        this.skipSpace();
+        String text = (this.ch == '"' ? this.readString() : this.readScalar());
+        try {
+            return Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid GTO file: bad location number \"" + text + "\".");
+        }
+    }
+
+    /**
+     * Skip over a value of any type.
+     *
+     * @throws IOException
+     */
+    private void skipValue() throws IOException {
+        this.skipSpace();
+        switch (this.ch) {
+        case '"' :
+            this.scanString(false);
+            break;
+        case '{' :
+            this.advance();
+            if (! this.check('}')) {
+                do {
+                    this.scanString(false);
+                    this.expect(':');
+                    this.skipValue();
+                } while (this.check(','));
+                this.expect('}');
+            }
+            break;
+        case '[' :
+            this.advance();
+            if (! this.check(']')) {
+                do {
+                    this.skipValue();
+                } while (this.check(','));
+                this.expect(']');
+            }
+            break;
+        default :
+            this.readScalar();
+        }
+    }
+
+    /**
+     * @return the genome ID
+     */
+    @Override
+    public String getId() {
+        return this.id;
+    }
+
+    /**
+     * @return the genome name
+     */
+    @Override
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * @return the list of pegs
+     */
+    @Override
+    public List<Peg> getPegs() {
+        return this.pegs;
+    }
+
+    @Override
+    public String toString() {
+        return this.id + " (" + this.name + ")";
+    }
+
+}
@@ -0,0 +1,240 @@
+/**
+ *
+ */
+package org.theseed.genome.align;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.theseed.genome.Genome;
+
+import com.github.cliftonlabs.json_simple.JsonException;
+import com.github.cliftonlabs.json_simple.JsonObject;
+import com.github.cliftonlabs.json_simple.Jsoner;
+
+/**
+ * This object represents a single GTO to be loaded.  The GTO can be a plain file, a gzip-compressed file, an entry in
+ * a zip archive, or an entry read from a tar archive.  (See GtoBundle for the code that finds the GTOs in a list of
+ * files and archives.)  The source is decompressed as it is read, so no copy of the archive is extracted.
+ *
+ * A full genome is loaded by parsing the JSON directly from the decompressed stream and building the Genome from
+ * the parsed object, so nothing is written to disk.  Loading only the pegs (with GtoPegReader) also reads the source
+ * stream directly.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public abstract class GtoSource {
+
+    // FIELDS
+    /** name of the GTO, for messages */
+    private String name;
+
+    /**
+     * Construct a GTO source.
+     *
+     * @param name		name of the GTO, for messages
+     */
+    protected GtoSource(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return an input stream for the GTO's JSON text
+     *
+     * @throws IOException
+     */
+    public abstract InputStream open() throws IOException;
+
+    /**
+     * @return the full genome from this source
+     *
+     * @throws IOException
+     */
+    public Genome load() throws IOException {
+        try (Reader reader = new BufferedReader(new InputStreamReader(this.open(), StandardCharsets.UTF_8), 65536)) {
+            JsonObject gto = (JsonObject) Jsoner.deserialize(reader);
+            return new Genome(gto);
+        } catch (JsonException | ClassCastException e) {
+            throw new IOException("Invalid GTO in " + this.name + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return a lightweight genome containing only the pegs from this source
+     *
+     * @throws IOException
+     */
+    public IPegGenome loadPegs() throws IOException {
+        return new GtoPegReader(this.open());
+    }
+
+    /**
+     * @return the name of the GTO
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    @Override
+    public String toString() {
+        return this.name;
+    }
+
+    /**
+     * @return TRUE if the specified name is that of a GTO file, compressed or not
+     *
+     * @param name		file or entry name to check
+     */
+    public static boolean isGtoName(String name) {
+        return name.endsWith(".gto") || name.endsWith(".gto.gz");
+    }
+
+    /**
+     * Open a GTO file, decompressing it if its name ends in ".gz".
+     *
+     * @param file		file to open
+     *
+     * @return an input stream for the GTO's JSON text
+     *
+     * @throws IOException
+     */
+    public static InputStream openFile(File file) throws IOException {
+        InputStream retVal = new BufferedInputStream(new FileInputStream(file), 65536);
+        if (file.getName().endsWith(".gz"))
+            retVal = new GZIPInputStream(retVal, 65536);
+        return retVal;
+    }
+
+    /**
+     * Load a full genome from a GTO file, which can be gzip-compressed.
+     *
+     * @param file		file to load
+     *
+     * @return the genome in the file
+     *
+     * @throws IOException
+     */
+    public static Genome loadGenome(File file) throws IOException {
+        return new FileSource(file).load();
+    }
+
+    /**
+     * This is a GTO source for a file, which can be compressed.
+     */
+    public static class FileSource extends GtoSource {
+
+        /** file containing the GTO */
+        private File file;
+
+        /**
+         * Construct a source for a GTO file.
+         *
+         * @param file		file containing the GTO
+         */
+        public FileSource(File file) {
+            super(file.toString());
+            this.file = file;
+        }
+
+        @Override
+        public InputStream open() throws IOException {
+            return openFile(this.file);
+        }
+
+        @Override
+        public Genome load() throws IOException {
+            Genome retVal;
+            if (this.file.getName().endsWith(".gz"))
+                retVal = super.load();
+            else
+                retVal = new Genome(this.file);
+            return retVal;
+        }
+
+        @Override
+        public IPegGenome loadPegs() throws IOException {
+            // This allows the file to be a snapshot.
+            return IPegGenome.load(this.file);
+        }
+
+    }
+
+    /**
+     * This is a GTO source for an entry in a zip archive.  Zip entries can be read independently, so several can be
+     * decompressed at once.
+     */
+    public static class ZipSource extends GtoSource {
+
+        /** archive containing the entry */
+        private ZipFile archive;
+        /** entry containing the GTO */
+        private ZipEntry entry;
+
+        /**
+         * Construct a source for a zip archive entry.
+         *
+         * @param archive	open zip archive
+         * @param entry		entry containing the GTO
+         */
+        public ZipSource(ZipFile archive, ZipEntry entry) {
+            super(archive.getName() + ":" + entry.getName());
+            this.archive = archive;
+            this.entry = entry;
+        }
+
+        @Override
+        public InputStream open() throws IOException {
+            InputStream retVal = new BufferedInputStream(this.archive.getInputStream(this.entry), 65536);
+            if (this.entry.getName().endsWith(".gz"))
+                retVal = new GZIPInputStream(retVal, 65536);
+            return retVal;
+        }
+
+    }
+
+    /**
+     * This is a GTO source for an entry that has already been read into memory.  It is used for tar archives,
+     * which can only be read sequentially.
+     */
+    public static class MemorySource extends GtoSource {
+
+        /** content of the entry */
+        private byte[] content;
+        /** TRUE if the content is gzip-compressed */
+        private boolean compressed;
+
+        /**
+         * Construct a source for an entry in memory.
+         *
+         * @param name			name of the entry
+         * @param content		content of the entry
+         */
+        public MemorySource(String name, byte[] content) {
+            super(name);
+            this.content = content;
+            this.compressed = name.endsWith(".gz");
+        }
+
+        @Override
+        public InputStream open() throws IOException {
+            InputStream retVal = new ByteArrayInputStream(this.content);
+            if (this.compressed)
+                retVal = new GZIPInputStream(retVal, 65536);
+            return retVal;
+        }
+
+    }
+
+}
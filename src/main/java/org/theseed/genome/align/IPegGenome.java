@@ -0,0 +1,52 @@
+/**
+ *
+ */
+package org.theseed.genome.align;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * This interface describes a lightweight genome that contains only the peg data needed to compare proteins.  It is
+ * implemented by the streaming GTO reader and by binary genome snapshots.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public interface IPegGenome {
+
+    /**
+     * @return the genome ID
+     */
+    public String getId();
+
+    /**
+     * @return the genome name
+     */
+    public String getName();
+
+    /**
+     * @return the list of pegs in the genome
+     */
+    public List<GtoPegReader.Peg> getPegs();
+
+    /**
+     * Load the pegs from a genome file.  The file can be a GTO or a binary snapshot.
+     *
+     * @param file		file containing the genome
+     *
+     * @return a lightweight genome containing the pegs
+     *
+     * @throws IOException
+     */
+    public static IPegGenome load(File file) throws IOException {
+        IPegGenome retVal;
+        if (GenomeSnapshot.isSnapshot(file))
+            retVal = new GenomeSnapshot(file);
+        else
+            retVal = new GtoPegReader(file);
+        return retVal;
+    }
+
+}
@@ -0,0 +1,281 @@
+/**
+ *
+ */
+package org.theseed.genome.align;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.theseed.sequence.DnaKmers;
+import org.theseed.sequence.ExtendedProteinRegion;
+import org.theseed.sequence.PackedContigStore;
+import org.theseed.sequence.RegionList;
+
+/**
+ * This object speeds up the closest-region search for large gene families.  Every base region in a family carries a
+ * fixed-size bottom-k MinHash sketch of its DNA kmers.  To find the closest base region to a query, the kmer distance
+ * to each candidate is first estimated from the sketches, and RegionList.getClosest computes the full kmer distance
+ * only for the candidates that survive the estimate.  Families of four or fewer regions are not sketched, and are
+ * searched in full as before.
+ *
+ * The sketch of a kmer set is the k smallest hash values of its kmers.  The Jaccard similarity of two sets is estimated
+ * by taking the k smallest hashes of the union of the two sketches and counting how many of them occur in both.  This
+ * is a sample without replacement from the union, so by Hoeffding's inequality the probability that the estimate is
+ * off by more than e is at most 2 exp(-2ke^2).  A candidate is discarded only if its estimated distance exceeds the
+ * maximum distance by more than e, or exceeds the best estimate in the family by more than 2e.  The second test depends
+ * on the estimate for every candidate in the family, so the result is guaranteed to match the full search only if all
+ * of the family's estimates are within e.  For this reason, the error bound for each family is computed from the sketch
+ * size and the permitted failure probability divided by the family size.  By the union bound, a query then returns a
+ * different region from the full search with at most the failure probability.  Because every survivor is checked with
+ * the full distance, a region beyond the maximum distance is never returned.  When both kmer sets fit in the sketch,
+ * the estimate is exact.
+ *
+ * Kmers are hashed in canonical form (the lesser hash of the kmer and its reverse complement), using the current
+ * DnaKmers kmer size.  The index is read-only once built, so it is safe for concurrent searches.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class RegionSketchIndex {
+
+    // FIELDS
+    /** logging facility */
+    protected static Logger log = LoggerFactory.getLogger(RegionSketchIndex.class);
+    /** map of function IDs to sketched families */
+    private Map<String, Family> families;
+    /** number of hashes in a full sketch */
+    private int sketchSize;
+    /** permitted probability that a search differs from the full search */
+    private double failure;
+    /** kmer size used for the sketches */
+    private int kmerSize;
+    /** default probability that a single search differs from the full search */
+    public static final double DEFAULT_FAILURE = 1e-6;
+    /** maximum size of a family that is searched in full without sketches */
+    public static final int SMALL_FAMILY = 4;
+    /** multiplier for the rolling kmer hash */
+    private static final long HASH_BASE = 0x100000001B3L;
+
+    /**
+     * This object contains the regions for a single function, along with their sketches.
+     */
+    private static class Family {
+
+        /** list of regions */
+        private RegionList regions;
+        /** sketches, parallel to the regions, or NULL if the family is small */
+        private long[][] sketches;
+        /** maximum error in an estimated distance for this family */
+        private double errorBound;
+
+    }
+
+    /**
+     * Construct a sketch index for a map of base-genome regions.
+     *
+     * @param regionMap		map of function IDs to region lists, as produced by RegionList.createMap
+     * @param sketchSize	number of hashes in each sketch
+     * @param failure		permitted probability that a single search differs from the full search
+     */
+    public RegionSketchIndex(Map<String, RegionList> regionMap, int sketchSize, double failure) {
+        this.sketchSize = sketchSize;
+        this.kmerSize = DnaKmers.kmerSize();
+        this.failure = failure;
+        this.families = new HashMap<String, Family>(regionMap.size() * 4 / 3 + 1);
+        int sketchCount = 0;
+        int maxFamily = SMALL_FAMILY + 1;
+        for (Map.Entry<String, RegionList> regionEntry : regionMap.entrySet()) {
+            Family family = new Family();
+            family.regions = regionEntry.getValue();
+            if (family.regions.size() > SMALL_FAMILY) {
+                family.errorBound = this.getErrorBound(family.regions.size());
+                maxFamily = Math.max(maxFamily, family.regions.size());
+                family.sketches = new long[family.regions.size()][];
+                for (int i = 0; i < family.sketches.length; i++)
+                    family.sketches[i] = this.sketch(family.regions.get(i).getSequence());
+                sketchCount += family.sketches.length;
+            }
+            this.families.put(regionEntry.getKey(), family);
+        }
+        log.info("{} base regions sketched with {} hashes each.  Distance error bounds range from {} to {}.", sketchCount,
+                sketchSize, String.format("%4.3f", this.getErrorBound(SMALL_FAMILY + 1)),
+                String.format("%4.3f", this.getErrorBound(maxFamily)));
+    }
+
+    /**
+     * @return the error bound for a sketch size and failure probability
+     *
+     * @param sketchSize	number of hashes in each sketch
+     * @param failure		permitted probability that an estimate exceeds the error bound
+     */
+    public static double errorBound(int sketchSize, double failure) {
+        return Math.sqrt(Math.log(2.0 / failure) / (2.0 * sketchSize));
+    }
+
+    /**
+     * Find the closest base region with a specified function.
+     *
+     * @param funId		ID of the region's function
+     * @param region	region to match
+     * @param maxDist	maximum acceptable distance
+     *
+     * @return the closest region within the maximum distance, or NULL if there is none
+     */
+    public ExtendedProteinRegion getClosest(String funId, ExtendedProteinRegion region, double maxDist) {
+        ExtendedProteinRegion retVal = null;
+        Family family = this.families.get(funId);
+        if (family != null) {
+            if (family.sketches == null)
+                retVal = family.regions.getClosest(region, maxDist);
+            else {
+                // Estimate the distance to each candidate.
+                long[] querySketch = this.sketch(region.getSequence());
+                final int n = family.sketches.length;
+                double[] estimates = new double[n];
+                double best = Double.MAX_VALUE;
+                for (int i = 0; i < n; i++) {
+                    estimates[i] = this.estimate(querySketch, family.sketches[i]);
+                    if (estimates[i] < best)
+                        best = estimates[i];
+                }
+                // Keep the candidates that could be in range and could be the closest.
+                double limit = Math.min(maxDist + family.errorBound, best + 2 * family.errorBound);
+                List<ExtendedProteinRegion> survivors = new ArrayList<ExtendedProteinRegion>();
+                for (int i = 0; i < n; i++) {
+                    if (estimates[i] <= limit)
+                        survivors.add(family.regions.get(i));
+                }
+                if (! survivors.isEmpty())
+                    retVal = new RegionList(survivors).getClosest(region, maxDist);
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the estimated kmer distance between two sketched sequences
+     *
+     * @param s1	sketch of the first sequence
+     * @param s2	sketch of the second sequence
+     */
+    protected double estimate(long[] s1, long[] s2) {
+        double retVal = 1.0;
+        if (s1.length > 0 && s2.length > 0) {
+            // Merge the two sketches to get the smallest hashes of the union, counting the ones in both.
+            int i1 = 0;
+            int i2 = 0;
+            int count = 0;
+            int common = 0;
+            while (count < this.sketchSize && (i1 < s1.length || i2 < s2.length)) {
+                if (i2 >= s2.length || i1 < s1.length && s1[i1] < s2[i2])
+                    i1++;
+                else if (i1 >= s1.length || s2[i2] < s1[i1])
+                    i2++;
+                else {
+                    common++;
+                    i1++;
+                    i2++;
+                }
+                count++;
+            }
+            retVal = 1.0 - ((double) common) / count;
+        }
+        return retVal;
+    }
+
+    /**
+     * Compute the sketch of a sequence.
+     *
+     * @param seq	DNA sequence to sketch
+     *
+     * @return a sorted array of the smallest distinct canonical kmer hashes, no longer than the sketch size
+     */
+    protected long[] sketch(String seq) {
+        final int k = this.kmerSize;
+        final int n = seq.length() - k + 1;
+        long[] retVal;
+        if (n <= 0)
+            retVal = new long[0];
+        else {
+            String fwd = seq.toLowerCase();
+            String rev = PackedContigStore.reverseComplement(fwd);
+            long[] fHashes = rollingHashes(fwd, k);
+            long[] rHashes = rollingHashes(rev, k);
+            // The reverse complement of the kmer at position i starts at position n - i - 1 of the reverse string.
+            long[] hashes = new long[n];
+            for (int i = 0; i < n; i++)
+                hashes[i] = Math.min(mix(fHashes[i]), mix(rHashes[n - i - 1]));
+            retVal = bottom(hashes);
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the polynomial hash of every kmer in a string, by starting position
+     *
+     * @param seq	string to hash
+     * @param k		kmer size
+     */
+    private static long[] rollingHashes(String seq, int k) {
+        final int n = seq.length() - k + 1;
+        long[] retVal = new long[n];
+        // Compute HASH_BASE^(k-1), for removing the oldest character from the hash.
+        long high = 1;
+        for (int i = 1; i < k; i++)
+            high *= HASH_BASE;
+        long hash = 0;
+        for (int i = 0; i < k - 1; i++)
+            hash = hash * HASH_BASE + seq.charAt(i);
+        for (int i = 0; i < n; i++) {
+            hash = hash * HASH_BASE + seq.charAt(i + k - 1);
+            retVal[i] = hash;
+            hash -= seq.charAt(i) * high;
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the sorted distinct smallest values in an array, no more than the sketch size
+     *
+     * @param hashes	array of hash values (will be sorted in place)
+     */
+    private long[] bottom(long[] hashes) {
+        Arrays.sort(hashes);
+        long[] retVal = new long[Math.min(hashes.length, this.sketchSize)];
+        int count = 0;
+        for (int i = 0; i < hashes.length && count < retVal.length; i++) {
+            if (count == 0 || hashes[i] != retVal[count - 1])
+                retVal[count++] = hashes[i];
+        }
+        return (count < retVal.length ? Arrays.copyOf(retVal, count) : retVal);
+    }
+
+    /**
+     * @return a well-distributed 64-bit hash (the MurmurHash3 finalizer) of a raw hash value
+     *
+     * @param h		raw hash value
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb53a185ec879L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * @return the error bound on distance estimates for a family of the specified size
+     *
+     * @param familySize	number of regions in the family
+     */
+    public double getErrorBound(int familySize) {
+        return errorBound(this.sketchSize, this.failure / familySize);
+    }
+
+}
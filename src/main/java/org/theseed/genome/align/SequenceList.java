@@ -119,6 +119,13 @@ public class SequenceList {
         return this.maxDist;
     }
 
+    /**
+     * @return the list of sequences (including the base)
+     */
+    public List<Sequence> getSequences() {
+        return this.members;
+    }
+
     /**
      * @return the base sequence ID
      */
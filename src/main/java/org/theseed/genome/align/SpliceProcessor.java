@@ -14,7 +14,6 @@ import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.stream.Collectors;
 
-import org.apache.commons.lang3.StringUtils;
 import org.kohsuke.args4j.Argument;
 import org.kohsuke.args4j.Option;
 import org.slf4j.Logger;
@@ -27,6 +26,7 @@ import org.theseed.proteins.Function;
 import org.theseed.proteins.FunctionMap;
 import org.theseed.sequence.ExtendedProteinRegion;
 import org.theseed.sequence.FastaOutputStream;
+import org.theseed.sequence.PackedContigStore;
 import org.theseed.sequence.RegionList;
 import org.theseed.sequence.Sequence;
 
@@ -69,6 +69,8 @@ public class SpliceProcessor extends BaseAlignProcessor {
     private SortedSet<RegionList> matchedRegions;
     /** reference genome */
     private Genome refGenome;
+    /** packed contig DNA of the reference genome */
+    private PackedContigStore refContigs;
     /** next region in reference genome */
     private ExtendedProteinRegion refRegion;
     /** location of next region in reference genome */
@@ -122,6 +124,7 @@ public class SpliceProcessor extends BaseAlignProcessor {
         // Get the map of extended protein regions.
         log.info("Scanning proteins in {}.", this.refGenome);
         this.refRegionMap = RegionList.createMap(this.funMap, this.refGenome, this.maxUpstream);
+        this.refContigs = new PackedContigStore(this.refGenome);
         // Create the storage set for mappings.
         this.matchedRegions = new TreeSet<RegionList>();
         // Read in the source genome.
@@ -142,22 +145,23 @@ public class SpliceProcessor extends BaseAlignProcessor {
             for (Contig contig : refContigs) {
                 log.info("Processing contig {}.", contig.getId());
                 // We will assemble the new version of this contig in here.
-                StringBuffer newSequence = new StringBuffer(contig.length());
                 String contigId = contig.getId();
+                final int contigLen = this.refContigs.getLength(contigId);
+                StringBuffer newSequence = new StringBuffer(contigLen);
                 // Denote we are at the beginning of the contig and then loop through it.
                 int pos = 1;
-                while (pos <= contig.length()) {
+                while (pos <= contigLen) {
                     int compare = contigId.compareTo(this.refLocation.getContigId());
                     if (compare < 0) {
                         // The next region is in a subsequent contig, so move to the next one.
                         this.flushContig(newSequence, contig, pos, outStream);
-                        pos = contig.length() + 1;
+                        pos = contigLen + 1;
                     } else if (compare > 0)
                         throw new IllegalArgumentException("Reference region has invalid location " + this.refLocation.toString() + " for feature " +
                                 this.refRegion.getFeature().getId() + ".");
                     else {
                         // The next region is in this contig.  Write out everything in front of it.
-                        this.writeContig(newSequence, contig, pos, this.refLocation.getLeft());
+                        this.writeContig(newSequence, contigId, pos, this.refLocation.getLeft());
                         // Now put in the source region.
                         this.writeSourceRegion(newSequence);
                         // Denote we're past this region.
@@ -192,13 +196,12 @@ public class SpliceProcessor extends BaseAlignProcessor {
      * Write the specified region of the contig into the sequence buffer.
      *
      * @param newSequence	output sequence buffer
-     * @param contig		source contig
+     * @param contigId		ID of the source contig
      * @param pos			leftmost position
      * @param end			point past the rightmost position
      */
-    private void writeContig(StringBuffer newSequence, Contig contig, int pos, int end) {
-        String seq = contig.getSequence();
-        newSequence.append(StringUtils.substring(seq, pos - 1, end - 1));
+    private void writeContig(StringBuffer newSequence, String contigId, int pos, int end) {
+        newSequence.append(this.refContigs.getDna(contigId, pos, end - 1));
     }
 
     /**
@@ -212,9 +215,8 @@ public class SpliceProcessor extends BaseAlignProcessor {
      * @throws IOException
      */
     private void flushContig(StringBuffer newSequence, Contig contig, int pos, FastaOutputStream outStream) throws IOException {
-        String seq = contig.getSequence();
-        if (pos <= seq.length())
-            newSequence.append(StringUtils.substring(seq, pos - 1, seq.length()));
+        String contigId = contig.getId();
+        newSequence.append(this.refContigs.getDna(contigId, pos, this.refContigs.getLength(contigId)));
         Sequence contigSeq = new Sequence(contig.getId(), contig.getDescription(), newSequence.toString());
         outStream.write(contigSeq);
         log.info("Contig {} written.", contig.getId());
@@ -193,7 +193,7 @@ public class HtmlSnipReporter extends SnipReporter {
                 var iter = regions.iterator();
                 while (iter.hasNext() && colTitle == null) {
                     Feature rFeat = iter.next().getFeature();
-                    if (rFeat.getParent().getId().contentEquals(genomeId))
+                    if (Feature.genomeOf(rFeat.getId()).contentEquals(genomeId))
                         colTitle = this.linkedTitle(titleText, rFeat);
                 }
                 if (colTitle == null)
@@ -211,7 +211,8 @@ public class HtmlSnipReporter extends SnipReporter {
          * @param feat		feature to which we should link
          */
         public ContainerTag linkedTitle(String title, Feature feat) {
-            return feat.getParent().getLinker().featureLink(feat.getId(), text(title));
+            String fid = feat.getId();
+            return HtmlSnipReporter.this.getLinker(Feature.genomeOf(fid)).featureLink(fid, text(title));
         }
 
         /**
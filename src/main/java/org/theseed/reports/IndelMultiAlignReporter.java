@@ -16,6 +16,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.theseed.genome.Feature;
 import org.theseed.genome.Genome;
 import org.theseed.locations.Location;
+import org.theseed.sequence.PackedContigStore;
 import org.theseed.sequence.Sequence;
 
 /**
@@ -34,28 +35,31 @@ public class IndelMultiAlignReporter extends MultiAlignReporter {
     private Set<String> altGenomeIds;
     /** ID of the first base genome */
     private String base0GenomeId;
-    /** map of genome IDs to genomes */
-    private Map<String, Genome> genomeMap;
+    /** map of genome IDs to packed contig DNA */
+    private Map<String, PackedContigStore> contigMap;
 
     public IndelMultiAlignReporter(File outFile) {
         super(outFile);
-        this.genomeMap = new HashMap<String, Genome>();
+        this.contigMap = new HashMap<String, PackedContigStore>();
     }
 
     @Override
     public void openReport(Genome genome, String[] altBases) {
         // Save the base genome ID.
         this.base0GenomeId = genome.getId();
-        // Add it to the genome map.
-        this.genomeMap.put(this.base0GenomeId, genome);
         // Save the alternate base IDs.
         this.altGenomeIds = new TreeSet<String>();
         this.altGenomeIds.addAll(Arrays.asList(altBases));
     }
 
     @Override
-    public void registerGenome(Genome genome) {
-        this.genomeMap.put(genome.getId(), genome);
+    public void registerGenome(Genome genome, PackedContigStore contigs) {
+        this.contigMap.put(genome.getId(), contigs);
+    }
+
+    @Override
+    public boolean needsContigs() {
+        return true;
     }
 
     @Override
@@ -114,8 +118,8 @@ public class IndelMultiAlignReporter extends MultiAlignReporter {
      * @param seq		sequence being processed
      */
     private void fixIndels(String genomeId, Sequence seq) {
-        // Get the genome containing this sequence.
-        Genome genome = this.genomeMap.get(genomeId);
+        // Get the DNA of the genome containing this sequence.
+        PackedContigStore contigs = this.contigMap.get(genomeId);
         // Convert the current sequence to upper case.
         String sequence = seq.getSequence().toUpperCase();
         // Get the DNA location.
@@ -125,7 +129,7 @@ public class IndelMultiAlignReporter extends MultiAlignReporter {
         while (sequence.charAt(start) == '-') start++;
         if (start > 0) {
             Location loc2 = loc.upstream(start);
-            String dna = StringUtils.leftPad(genome.getDna(loc2), start, '-');
+            String dna = StringUtils.leftPad(contigs.getDna(loc2), start, '-');
             sequence = dna.toLowerCase() + StringUtils.substring(sequence, start);
         }
         int last = sequence.length() - 1;
@@ -133,7 +137,7 @@ public class IndelMultiAlignReporter extends MultiAlignReporter {
         while (sequence.charAt(end) == '-') end--;
         if (end < last) {
             Location loc2 = loc.downstream(last - end);
-            String dna = StringUtils.rightPad(genome.getDna(loc2), loc2.getLength(), '-');
+            String dna = StringUtils.rightPad(contigs.getDna(loc2), loc2.getLength(), '-');
             sequence = StringUtils.substring(sequence, 0, end + 1) + dna.toLowerCase();
         }
         // Update the sequence.
@@ -170,7 +170,7 @@ public abstract class MajorSnipReporter extends SnipReporter {
                 Feature feat2 = region.getFeature();
                 if (this.testRegions(baseRegion, region)) {
                     // Here we have a significant change.
-                    this.changed.add(feat2.getParent().getId());
+                    this.changed.add(Feature.genomeOf(feat2.getId()));
                 }
             }
         }
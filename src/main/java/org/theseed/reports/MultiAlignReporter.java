@@ -10,6 +10,7 @@ import java.io.UncheckedIOException;
 import java.util.List;
 
 import org.theseed.genome.Genome;
+import org.theseed.sequence.PackedContigStore;
 import org.theseed.sequence.Sequence;
 
 /**
@@ -45,11 +46,20 @@ public abstract class MultiAlignReporter implements AutoCloseable {
     public abstract void openReport(Genome genome, String[] altBases);
 
     /**
-     * Register a genome used in the report (optional).
+     * Register a genome used in the report (optional).  The base genome is registered as well, after the report
+     * is opened.
      *
      * @param genome	genome to register
+     * @param contigs	packed contig DNA of the genome, or NULL if the report does not need it
      */
-    public void registerGenome(Genome genome) { }
+    public void registerGenome(Genome genome, PackedContigStore contigs) { }
+
+    /**
+     * @return TRUE if this report needs the packed contig DNA of each registered genome
+     */
+    public boolean needsContigs() {
+        return false;
+    }
 
     /**
      * Output a particular alignment.
@@ -53,6 +53,8 @@ public abstract class SnipReporter extends BaseReporter {
     private IParms processor;
     /** map of genome IDs to names */
     private Map<String, String> gNameMap;
+    /** map of genome IDs to feature linkers */
+    private Map<String, LinkObject> linkerMap;
     /** feature data output flag string for unmodified features */
     private String fDataUnmodified;
 
@@ -131,6 +133,7 @@ public abstract class SnipReporter extends BaseReporter {
         this.processor = processor;
         // Create the genome map and ID set.
         this.gNameMap = new HashMap<String, String>();
+        this.linkerMap = new HashMap<String, LinkObject>();
     }
 
     /**
@@ -144,13 +147,15 @@ public abstract class SnipReporter extends BaseReporter {
         this.fDataOut = new PrintWriter(outFile);
     }
     /**
-     * Register an aligned genome.
+     * Register an aligned genome.  Everything the report needs from the genome itself is saved here, so the
+     * reporters never have to reach a genome through its features.
      *
      * @param genome	genome to register
      */
     public void register(Genome genome) {
         this.genomeLabels.add(new GenomeLabel(genome));
         this.gNameMap.put(genome.getId(), genome.getName());
+        this.linkerMap.put(genome.getId(), genome.getLinker());
         this.registerGenome(genome);
     }
 
@@ -366,6 +371,15 @@ public abstract class SnipReporter extends BaseReporter {
         return this.gNameMap.get(id);
     }
 
+    /**
+     * @return the feature linker for the specified genome, or NULL if the genome is not registered
+     *
+     * @param id	ID of genome whose linker is desired
+     */
+    public LinkObject getLinker(String id) {
+        return this.linkerMap.get(id);
+    }
+
     /**
      * @return a list of additional groups, or NULL if there are none
      *
@@ -4,6 +4,8 @@
 package org.theseed.sequence;
 
 import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
 
 import org.theseed.genome.Genome;
 
@@ -75,4 +77,13 @@ public class MarkedRegionList extends RegionList {
         return this.counter;
     }
 
+    /**
+     * @return a list of sequences for the regions in this list, suitable for alignment
+     */
+    public List<Sequence> toSequences() {
+        List<Sequence> retVal = this.stream().map(x -> new Sequence(x.getLabel(), x.getFullLocation().toString(), x.getSequence()))
+                .collect(Collectors.toList());
+        return retVal;
+    }
+
 }
@@ -0,0 +1,257 @@
+/**
+ *
+ */
+package org.theseed.sequence;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.theseed.genome.Contig;
+import org.theseed.genome.Genome;
+import org.theseed.locations.Location;
+
+/**
+ * This object stores the contig DNA of a genome packed two bits per base.  Any character other than A, C, G, or T
+ * (usually N or another IUPAC ambiguity code) is recorded in a per-contig exception list, which is normally tiny.
+ * The packed bases are kept in byte buffers, which are allocated off the heap when the store is built from a genome,
+ * so the DNA uses about an eighth of the memory of the original contig strings and almost none of the heap.
+ *
+ * Slices are extracted by position or by location.  A minus-strand location is reverse-complemented, including the
+ * ambiguity codes.  All DNA is returned in lower case, and requests that run off the end of a contig are clipped,
+ * in the same manner as Genome.getDna.  The store is read-only once built, so it is safe for concurrent readers.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class PackedContigStore {
+
+    // FIELDS
+    /** map of contig IDs to packed contigs */
+    private Map<String, Packed> contigs;
+    /** conversion from 2-bit codes to bases */
+    private static final char[] BASES = new char[] { 'a', 'c', 'g', 't' };
+    /** IUPAC complement table, indexed by lower-case character */
+    private static final char[] COMPLEMENT = new char[128];
+    static {
+        for (int i = 0; i < COMPLEMENT.length; i++)
+            COMPLEMENT[i] = (char) i;
+        String from = "acgtrykmbvdh";
+        String to =   "tgcayrmkvbhd";
+        for (int i = 0; i < from.length(); i++)
+            COMPLEMENT[from.charAt(i)] = to.charAt(i);
+    }
+
+    /**
+     * This object contains a single packed contig.
+     */
+    private static class Packed {
+
+        /** number of bases in the contig */
+        private int length;
+        /** packed bases, four per byte, with the first base in the low-order bits */
+        private ByteBuffer bases;
+        /** sorted positions (0-based) of exception characters */
+        private int[] excPositions;
+        /** exception characters, parallel to the positions */
+        private byte[] excChars;
+
+        /**
+         * Create a packed contig from existing packed data.
+         *
+         * @param length			number of bases in the contig
+         * @param bases				buffer of packed bases
+         * @param excPositions		sorted positions of exception characters
+         * @param excChars			exception characters
+         */
+        private Packed(int length, ByteBuffer bases, int[] excPositions, byte[] excChars) {
+            this.length = length;
+            this.bases = bases;
+            this.excPositions = excPositions;
+            this.excChars = excChars;
+        }
+
+        /**
+         * Pack a DNA string.
+         *
+         * @param dna		DNA string to pack
+         * @param direct	TRUE to allocate the packed bases off the heap
+         *
+         * @return the packed contig
+         */
+        public static Packed pack(String dna, boolean direct) {
+            final int n = dna.length();
+            int size = (n + 3) / 4;
+            ByteBuffer bases = (direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size));
+            List<Integer> positions = new ArrayList<Integer>();
+            StringBuilder chars = new StringBuilder();
+            int current = 0;
+            for (int i = 0; i < n; i++) {
+                char c = Character.toLowerCase(dna.charAt(i));
+                int code;
+                switch (c) {
+                case 'a' :
+                    code = 0;
+                    break;
+                case 'c' :
+                    code = 1;
+                    break;
+                case 'g' :
+                    code = 2;
+                    break;
+                case 't' :
+                    code = 3;
+                    break;
+                default :
+                    code = 0;
+                    positions.add(i);
+                    chars.append(c);
+                }
+                current |= code << ((i & 3) * 2);
+                if ((i & 3) == 3) {
+                    bases.put(i >> 2, (byte) current);
+                    current = 0;
+                }
+            }
+            if ((n & 3) != 0)
+                bases.put(n >> 2, (byte) current);
+            int[] excPositions = positions.stream().mapToInt(x -> x).toArray();
+            byte[] excChars = new byte[chars.length()];
+            for (int i = 0; i < excChars.length; i++)
+                excChars[i] = (byte) chars.charAt(i);
+            return new Packed(n, bases, excPositions, excChars);
+        }
+
+        /**
+         * Unpack a range of bases.
+         *
+         * @param start		first position to unpack (0-based)
+         * @param end		position after the last one to unpack
+         *
+         * @return the bases in the range, in lower case
+         */
+        public String unpack(int start, int end) {
+            char[] retVal = new char[end - start];
+            for (int i = start; i < end; i++) {
+                int code = (this.bases.get(i >> 2) >> ((i & 3) * 2)) & 3;
+                retVal[i - start] = BASES[code];
+            }
+            // Apply the exceptions in the range.
+            int e = Arrays.binarySearch(this.excPositions, start);
+            if (e < 0) e = -e - 1;
+            while (e < this.excPositions.length && this.excPositions[e] < end) {
+                retVal[this.excPositions[e] - start] = (char) this.excChars[e];
+                e++;
+            }
+            return new String(retVal);
+        }
+
+        /**
+         * @return the number of bases in the contig
+         */
+        public int getLength() {
+            return this.length;
+        }
+
+    }
+
+    /**
+     * Create an empty contig store.
+     */
+    public PackedContigStore() {
+        this.contigs = new HashMap<String, Packed>();
+    }
+
+    /**
+     * Create a contig store containing all the contigs of a genome.  The packed bases are stored off the heap, so
+     * the genome itself can be discarded once the store is built.
+     *
+     * @param genome	genome whose contigs are to be stored
+     */
+    public PackedContigStore(Genome genome) {
+        this.contigs = new HashMap<String, Packed>();
+        for (Contig contig : genome.getContigs())
+            this.add(contig.getId(), contig.getSequence());
+    }
+
+    /**
+     * Add a contig to the store.
+     *
+     * @param contigId	ID of the contig
+     * @param dna		DNA of the contig
+     */
+    public void add(String contigId, String dna) {
+        this.contigs.put(contigId, Packed.pack(dna, true));
+    }
+
+    /**
+     * @return the length of a contig, or -1 if the contig is not in the store
+     *
+     * @param contigId	ID of the contig
+     */
+    public int getLength(String contigId) {
+        Packed packed = this.contigs.get(contigId);
+        return (packed == null ? -1 : packed.length);
+    }
+
+    /**
+     * Extract plus-strand DNA from a contig.  The requested range is clipped to the contig boundaries.
+     *
+     * @param contigId		ID of the contig
+     * @param left			leftmost position to extract (1-based)
+     * @param right			rightmost position to extract (1-based)
+     *
+     * @return the DNA in the specified range, or an empty string if the contig is not found
+     */
+    public String getDna(String contigId, int left, int right) {
+        Packed packed = this.contigs.get(contigId);
+        String retVal = "";
+        if (packed != null) {
+            int start = Math.max(1, left);
+            int end = Math.min(packed.length, right);
+            if (start <= end)
+                retVal = packed.unpack(start - 1, end);
+        }
+        return retVal;
+    }
+
+    /**
+     * Extract the DNA for a location.  The DNA of a minus-strand location is reverse-complemented.
+     *
+     * @param loc		location whose DNA is desired
+     *
+     * @return the DNA at the location, clipped to the contig boundaries
+     */
+    public String getDna(Location loc) {
+        String retVal = this.getDna(loc.getContigId(), loc.getLeft(), loc.getRight());
+        if (loc.getDir() == '-')
+            retVal = reverseComplement(retVal);
+        return retVal;
+    }
+
+    /**
+     * @return the reverse complement of a lower-case DNA string, including ambiguity codes
+     *
+     * @param dna		DNA string to reverse-complement
+     */
+    public static String reverseComplement(String dna) {
+        final int n = dna.length();
+        char[] retVal = new char[n];
+        for (int i = 0; i < n; i++) {
+            char c = dna.charAt(n - i - 1);
+            retVal[i] = (c < COMPLEMENT.length ? COMPLEMENT[c] : c);
+        }
+        return new String(retVal);
+    }
+
+    /**
+     * @return the number of contigs in the store
+     */
+    public int size() {
+        return this.contigs.size();
+    }
+
+}
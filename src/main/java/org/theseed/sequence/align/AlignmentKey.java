@@ -0,0 +1,66 @@
+/**
+ *
+ */
+package org.theseed.sequence.align;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+import org.theseed.sequence.Sequence;
+
+/**
+ * This class computes a content key for an alignment request.  The key is a SHA-256 hash of the aligner name followed
+ * by the label and DNA of each input sequence, in order.  Two requests with the same key will produce the same
+ * alignment.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class AlignmentKey {
+
+    // FIELDS
+    /** hexadecimal digits */
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * @return the content key for an alignment request
+     *
+     * @param alignerName	name of the aligner configuration
+     * @param sequences		list of input sequences
+     */
+    public static String compute(String alignerName, List<Sequence> sequences) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 is required of every Java platform.
+            throw new IllegalStateException(e);
+        }
+        update(digest, alignerName);
+        for (Sequence seq : sequences) {
+            update(digest, seq.getLabel());
+            update(digest, seq.getSequence());
+        }
+        byte[] hash = digest.digest();
+        char[] retVal = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            retVal[i * 2] = HEX[(hash[i] >> 4) & 0xF];
+            retVal[i * 2 + 1] = HEX[hash[i] & 0xF];
+        }
+        return String.valueOf(retVal);
+    }
+
+    /**
+     * Add a string to the digest, followed by a separator.
+     *
+     * @param digest	digest to update
+     * @param string	string to add
+     */
+    private static void update(MessageDigest digest, String string) {
+        digest.update(string.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+}
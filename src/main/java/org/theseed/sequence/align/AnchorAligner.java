@@ -0,0 +1,199 @@
+/**
+ *
+ */
+package org.theseed.sequence.align;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.theseed.sequence.Sequence;
+
+/**
+ * This aligner divides long sequences into pieces using anchors.  An anchor is a kmer that occurs exactly once in
+ * every sequence.  The anchors are chained in order of their position in the first sequence, keeping only those whose
+ * positions increase in every sequence, and each anchor is extended to the right as long as all the sequences agree.
+ * The anchor blocks are already aligned, so only the segments between them are passed to the wrapped aligner.  A
+ * set of segments that differ only by isolated substitutions (see UngappedAligner) is not aligned at all.  Segments
+ * of the same length are not enough, since a deletion and an insertion with no anchor between them leave the length
+ * unchanged.
+ *
+ * This turns one very long alignment into many short ones, and the cost of alignment grows much faster than
+ * linearly with the length.  The price is that an indel can never be placed across an anchor, which is only a
+ * problem for sequences much more divergent than the strains we normally compare.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class AnchorAligner extends WrappingAligner {
+
+    // FIELDS
+    /** logging facility */
+    protected static Logger log = LoggerFactory.getLogger(AnchorAligner.class);
+    /** anchor kmer size */
+    private static final int K = 20;
+    /** total length of input sequences */
+    private AtomicLong inLength;
+    /** total length of anchored sequence */
+    private AtomicLong anchorLength;
+    /** number of anchor blocks found */
+    private AtomicLong anchorCount;
+
+    /**
+     * Construct an anchoring aligner.
+     *
+     * @param inner		aligner to use for the segments between anchors
+     */
+    public AnchorAligner(MultiAligner inner) {
+        super(inner);
+        this.inLength = new AtomicLong();
+        this.anchorLength = new AtomicLong();
+        this.anchorCount = new AtomicLong();
+    }
+
+    @Override
+    public List<Sequence> align(List<Sequence> sequences) throws IOException, InterruptedException {
+        final int n = sequences.size();
+        if (n == 0)
+            return new ArrayList<Sequence>();
+        String[] texts = new String[n];
+        for (int i = 0; i < n; i++) {
+            texts[i] = sequences.get(i).getSequence().toUpperCase();
+            this.inLength.addAndGet(texts[i].length());
+        }
+        // Find the position of each unique kmer in each sequence.
+        List<Map<String, Integer>> kmerMaps = new ArrayList<Map<String, Integer>>(n);
+        for (String text : texts)
+            kmerMaps.add(uniqueKmers(text));
+        // This will hold the aligned rows.
+        StringBuilder[] rows = new StringBuilder[n];
+        for (int i = 0; i < n; i++)
+            rows[i] = new StringBuilder(texts[i].length() + 100);
+        // These are the ends of the previous anchor in each sequence.
+        int[] ends = new int[n];
+        // Loop through the first sequence, looking for anchors.
+        int p = 0;
+        int[] starts = new int[n];
+        while (p + K <= texts[0].length()) {
+            boolean found = false;
+            String kmer = texts[0].substring(p, p + K);
+            if (kmerMaps.get(0).get(kmer) != null) {
+                // The kmer is unique in the first sequence.  Check the others.
+                found = true;
+                starts[0] = p;
+                for (int i = 1; found && i < n; i++) {
+                    Integer pos = kmerMaps.get(i).get(kmer);
+                    if (pos == null || pos < ends[i])
+                        found = false;
+                    else
+                        starts[i] = pos;
+                }
+            }
+            if (! found)
+                p++;
+            else {
+                // We have an anchor.  Align the segments before it.
+                this.alignGap(sequences, starts, ends, rows);
+                // Extend the anchor to the right while all the sequences agree.
+                int len = K;
+                boolean match = true;
+                while (match) {
+                    int pos0 = starts[0] + len;
+                    match = (pos0 < texts[0].length());
+                    for (int i = 1; match && i < n; i++) {
+                        int pos = starts[i] + len;
+                        match = (pos < texts[i].length() && texts[i].charAt(pos) == texts[0].charAt(pos0));
+                    }
+                    if (match) len++;
+                }
+                // Copy the anchor into the rows.
+                for (int i = 0; i < n; i++) {
+                    String text = sequences.get(i).getSequence();
+                    rows[i].append(text, starts[i], starts[i] + len);
+                    ends[i] = starts[i] + len;
+                }
+                this.anchorCount.incrementAndGet();
+                this.anchorLength.addAndGet((long) len * n);
+                p = ends[0];
+            }
+        }
+        // Align the segments after the last anchor.
+        for (int i = 0; i < n; i++)
+            starts[i] = texts[i].length();
+        this.alignGap(sequences, starts, ends, rows);
+        // Build the output.
+        List<Sequence> retVal = new ArrayList<Sequence>(n);
+        for (int i = 0; i < n; i++) {
+            Sequence seq = sequences.get(i);
+            retVal.add(new Sequence(seq.getLabel(), seq.getComment(), rows[i].toString()));
+        }
+        return retVal;
+    }
+
+    /**
+     * Align the segments between two anchors and append them to the output rows.
+     *
+     * @param sequences		original sequences
+     * @param starts		start of the next anchor in each sequence
+     * @param ends			end of the previous anchor in each sequence
+     * @param rows			output rows being built
+     *
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    private void alignGap(List<Sequence> sequences, int[] starts, int[] ends, StringBuilder[] rows)
+            throws IOException, InterruptedException {
+        final int n = sequences.size();
+        List<Sequence> segments = new ArrayList<Sequence>(n);
+        for (int i = 0; i < n; i++) {
+            Sequence seq = sequences.get(i);
+            segments.add(new Sequence(seq.getLabel(), seq.getComment(), seq.getSequence().substring(ends[i], starts[i])));
+        }
+        if (UngappedAligner.isUngapped(segments)) {
+            // These segments are already aligned.
+            for (int i = 0; i < n; i++)
+                rows[i].append(segments.get(i).getSequence());
+        } else {
+            List<String> aligned = this.alignSegments(segments);
+            for (int i = 0; i < n; i++)
+                rows[i].append(aligned.get(i));
+        }
+    }
+
+    /**
+     * @return a map from each kmer that occurs only once in a sequence to its position
+     *
+     * @param text		sequence to scan
+     */
+    private static Map<String, Integer> uniqueKmers(String text) {
+        Map<String, Integer> retVal = new HashMap<String, Integer>(text.length() * 2);
+        for (int p = 0; p + K <= text.length(); p++) {
+            String kmer = text.substring(p, p + K);
+            // A duplicated kmer is marked with a negative position and then removed.
+            if (retVal.containsKey(kmer))
+                retVal.put(kmer, -1);
+            else
+                retVal.put(kmer, p);
+        }
+        retVal.values().removeIf(x -> x < 0);
+        return retVal;
+    }
+
+    @Override
+    protected String getPrefix() {
+        return "anchor";
+    }
+
+    @Override
+    public void logStats() {
+        super.logStats();
+        log.info("{} anchors covered {} of {} input characters.", this.anchorCount.get(), this.anchorLength.get(),
+                this.inLength.get());
+    }
+
+}
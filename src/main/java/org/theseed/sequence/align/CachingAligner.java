@@ -0,0 +1,198 @@
+/**
+ *
+ */
+package org.theseed.sequence.align;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.theseed.sequence.FastaInputStream;
+import org.theseed.sequence.FastaOutputStream;
+import org.theseed.sequence.Sequence;
+
+/**
+ * This aligner keeps a persistent on-disk cache of alignments.  Each alignment is stored as a FASTA file whose name
+ * is the content key of the request (see AlignmentKey).  On a cache hit, the stored alignment is returned and the
+ * wrapped aligner is not called.
+ *
+ * The cache has a maximum size.  When it is exceeded, the least-recently-used alignments are deleted.  The file
+ * modification time is used to track recent use, so the eviction order survives across runs.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class CachingAligner extends WrappingAligner {
+
+    // FIELDS
+    /** logging facility */
+    protected static Logger log = LoggerFactory.getLogger(CachingAligner.class);
+    /** file name suffix for cached alignments */
+    private static final String SUFFIX = ".fa";
+    /** cache directory */
+    private File cacheDir;
+    /** maximum cache size in bytes */
+    private long maxSize;
+    /** current cache size in bytes */
+    private long size;
+    /** number of cache hits */
+    private AtomicInteger hits;
+    /** number of cache misses */
+    private AtomicInteger misses;
+
+    /**
+     * Construct a caching aligner.
+     *
+     * @param inner		aligner to use on a cache miss
+     * @param cacheDir	directory containing the cached alignments
+     * @param maxSize	maximum cache size in bytes
+     *
+     * @throws IOException
+     */
+    public CachingAligner(MultiAligner inner, File cacheDir, long maxSize) throws IOException {
+        super(inner);
+        if (! cacheDir.isDirectory()) {
+            log.info("Creating alignment cache directory {}.", cacheDir);
+            Files.createDirectories(cacheDir.toPath());
+        }
+        this.cacheDir = cacheDir;
+        this.maxSize = maxSize;
+        this.size = Arrays.stream(this.listCache()).mapToLong(x -> x.length()).sum();
+        this.hits = new AtomicInteger();
+        this.misses = new AtomicInteger();
+        log.info("Alignment cache {} contains {} bytes.", cacheDir, this.size);
+    }
+
+    @Override
+    public List<Sequence> align(List<Sequence> sequences) throws IOException, InterruptedException {
+        String key = AlignmentKey.compute(this.getInner().getName(), sequences);
+        File cacheFile = new File(this.cacheDir, key + SUFFIX);
+        List<Sequence> retVal = this.read(cacheFile, sequences);
+        if (retVal != null)
+            this.hits.incrementAndGet();
+        else {
+            this.misses.incrementAndGet();
+            retVal = this.getInner().align(sequences);
+            this.write(cacheFile, retVal);
+        }
+        return retVal;
+    }
+
+    /**
+     * Read an alignment from the cache.  The comments are restored from the input sequences, since they are not
+     * part of the content key.
+     *
+     * @param cacheFile		file containing the cached alignment
+     * @param sequences		input sequences
+     *
+     * @return the cached alignment, or NULL if it is not in the cache
+     */
+    private List<Sequence> read(File cacheFile, List<Sequence> sequences) {
+        List<Sequence> retVal = null;
+        if (cacheFile.canRead()) {
+            try {
+                retVal = new ArrayList<Sequence>(sequences.size());
+                try (FastaInputStream inStream = new FastaInputStream(cacheFile)) {
+                    for (Sequence seq : inStream)
+                        retVal.add(seq);
+                }
+                Map<String, String> comments = new HashMap<String, String>(sequences.size() * 4 / 3 + 1);
+                for (Sequence seq : sequences)
+                    comments.put(seq.getLabel(), seq.getComment());
+                for (Sequence seq : retVal)
+                    seq.setComment(comments.get(seq.getLabel()));
+                // Denote this alignment has been used recently.
+                cacheFile.setLastModified(System.currentTimeMillis());
+            } catch (IOException | RuntimeException e) {
+                // A damaged cache file is treated as a miss.
+                log.warn("Error reading alignment cache file {}: {}", cacheFile, e.toString());
+                retVal = null;
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * Store an alignment in the cache and then evict old alignments if the cache is too big.  The alignment is
+     * written to a temporary file and then renamed, so readers never see a partial file.
+     *
+     * @param cacheFile		file to contain the cached alignment
+     * @param alignment		alignment to store
+     *
+     * @throws IOException
+     */
+    private void write(File cacheFile, List<Sequence> alignment) throws IOException {
+        File tempFile = File.createTempFile("cache", ".tmp", this.cacheDir);
+        try {
+            try (FastaOutputStream outStream = new FastaOutputStream(tempFile)) {
+                outStream.write(alignment);
+            }
+            Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            tempFile.delete();
+        }
+        this.evict(cacheFile.length());
+    }
+
+    /**
+     * Add to the cache size and delete the least-recently-used files until the cache is within its limit.
+     *
+     * @param added		number of bytes added
+     */
+    private synchronized void evict(long added) {
+        this.size += added;
+        if (this.size > this.maxSize) {
+            File[] files = this.listCache();
+            Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+            this.size = Arrays.stream(files).mapToLong(x -> x.length()).sum();
+            int deleted = 0;
+            for (int i = 0; i < files.length && this.size > this.maxSize; i++) {
+                long len = files[i].length();
+                if (files[i].delete()) {
+                    this.size -= len;
+                    deleted++;
+                }
+            }
+            log.info("{} alignments evicted from cache.", deleted);
+        }
+    }
+
+    /**
+     * @return an array of the alignment files in the cache
+     */
+    private File[] listCache() {
+        File[] retVal = this.cacheDir.listFiles((dir, name) -> name.endsWith(SUFFIX));
+        if (retVal == null)
+            retVal = new File[0];
+        return retVal;
+    }
+
+    @Override
+    protected String getPrefix() {
+        return "cache";
+    }
+
+    @Override
+    public String getName() {
+        // The cache does not change the alignment, so we use the name of the wrapped aligner.
+        return this.getInner().getName();
+    }
+
+    @Override
+    public void logStats() {
+        super.logStats();
+        log.info("Alignment cache had {} hits and {} misses.", this.hits.get(), this.misses.get());
+    }
+
+}
@@ -0,0 +1,163 @@
+/**
+ *
+ */
+package org.theseed.sequence.align;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.theseed.sequence.FastaInputStream;
+import org.theseed.sequence.FastaOutputStream;
+import org.theseed.sequence.Sequence;
+import org.theseed.sequence.clustal.ClustalPipeline;
+
+/**
+ * This aligner runs the external Clustal program.  Normally, the sequences are written to the program's standard
+ * input and the alignment is read from its standard output, so no files are involved.  If the program cannot be
+ * started or the pipes fail, we fall back to the file-based ClustalPipeline.  In that case, each alignment writes its
+ * sequences to its own temporary FASTA file in the working directory, so multiple alignments can run at once.  An
+ * error reported by Clustal itself is passed back to the caller, since running it again on a file would fail the
+ * same way.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class ClustalAligner extends MultiAligner {
+
+    // FIELDS
+    /** logging facility */
+    protected static Logger log = LoggerFactory.getLogger(ClustalAligner.class);
+    /** name of the Clustal program for piped alignment */
+    private static final String PROGRAM = "clustalo";
+    /** working directory for temporary files */
+    private File workDir;
+    /** TRUE if piped alignment is possible */
+    private volatile boolean pipeOk;
+
+    /**
+     * Construct a Clustal aligner.
+     *
+     * @param workDir	working directory for temporary files
+     */
+    public ClustalAligner(File workDir) {
+        this.workDir = workDir;
+        this.pipeOk = true;
+    }
+
+    @Override
+    public List<Sequence> align(List<Sequence> sequences) throws IOException, InterruptedException {
+        List<Sequence> retVal = null;
+        if (this.pipeOk)
+            retVal = this.alignPiped(sequences);
+        if (retVal == null)
+            retVal = this.alignFile(sequences);
+        return retVal;
+    }
+
+    /**
+     * Align sequences by piping them through the Clustal program.
+     *
+     * @param sequences		list of sequences to align
+     *
+     * @return the aligned sequences, or NULL if the pipes could not be used
+     *
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    private List<Sequence> alignPiped(List<Sequence> sequences) throws IOException, InterruptedException {
+        ProcessBuilder builder = new ProcessBuilder(PROGRAM, "-i", "-", "--outfmt=fa");
+        builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+        Process process;
+        try {
+            process = builder.start();
+        } catch (IOException e) {
+            // If we cannot start the program, there is no point in trying again.
+            log.warn("Could not start {} for piped alignment: {}.  Using temporary files.", PROGRAM, e.getMessage());
+            this.pipeOk = false;
+            return null;
+        }
+        try {
+            // The sequences are written and the alignment is read on separate threads, so the program cannot block on a
+            // full pipe and this thread can wait for the process in a way that responds to interrupts.
+            IOException[] errors = new IOException[2];
+            Thread writer = new Thread(() -> {
+                try (FastaOutputStream outStream = new FastaOutputStream(process.getOutputStream())) {
+                    outStream.write(sequences);
+                } catch (IOException e) {
+                    errors[0] = e;
+                }
+            }, "clustal-writer");
+            List<Sequence> retVal = new ArrayList<Sequence>(sequences.size());
+            Thread reader = new Thread(() -> {
+                try (FastaInputStream inStream = new FastaInputStream(process.getInputStream())) {
+                    for (Sequence seq : inStream)
+                        retVal.add(seq);
+                } catch (IOException e) {
+                    errors[1] = e;
+                }
+            }, "clustal-reader");
+            writer.start();
+            reader.start();
+            int exitCode = process.waitFor();
+            writer.join();
+            reader.join();
+            // A failing Clustal breaks the pipes, so we check its exit code first.
+            if (exitCode != 0)
+                throw new IOException("Clustal exited with code " + exitCode + ".");
+            for (IOException error : errors) {
+                if (error != null) {
+                    log.warn("Piped Clustal alignment failed: {}.  Using temporary file.", error.getMessage());
+                    return null;
+                }
+            }
+            if (retVal.size() != sequences.size())
+                throw new IOException("Clustal returned " + retVal.size() + " sequences, but " + sequences.size() + " were sent.");
+            // Restore the comments from the input.
+            Map<String, String> comments = new HashMap<String, String>(sequences.size() * 4 / 3 + 1);
+            for (Sequence seq : sequences)
+                comments.put(seq.getLabel(), seq.getComment());
+            for (Sequence seq : retVal)
+                seq.setComment(comments.get(seq.getLabel()));
+            return retVal;
+        } finally {
+            // If we were interrupted, this kills the program, which closes the pipes and ends the other threads.
+            if (process.isAlive())
+                process.destroyForcibly();
+        }
+    }
+
+    /**
+     * Align sequences using a temporary file.
+     *
+     * @param sequences		list of sequences to align
+     *
+     * @return the aligned sequences
+     *
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    private List<Sequence> alignFile(List<Sequence> sequences) throws IOException, InterruptedException {
+        File tempFile = File.createTempFile("align", ".fa", this.workDir);
+        try {
+            try (FastaOutputStream outStream = new FastaOutputStream(tempFile)) {
+                outStream.write(sequences);
+            }
+            ClustalPipeline aligner = new ClustalPipeline(tempFile);
+            return aligner.run();
+        } finally {
+            tempFile.delete();
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "clustal";
+    }
+
+}
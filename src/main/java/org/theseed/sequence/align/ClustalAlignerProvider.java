@@ -0,0 +1,26 @@
+/**
+ *
+ */
+package org.theseed.sequence.align;
+
+import java.io.File;
+
+/**
+ * This is the provider for the external Clustal Omega program.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class ClustalAlignerProvider implements IAlignerProvider {
+
+    @Override
+    public String getName() {
+        return "clustal";
+    }
+
+    @Override
+    public MultiAligner create(File workDir) {
+        return new ClustalAligner(workDir);
+    }
+
+}
@@ -0,0 +1,113 @@
+/**
+ *
+ */
+package org.theseed.sequence.align;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToIntFunction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.theseed.proteins.DnaTranslator;
+import org.theseed.sequence.Sequence;
+
+/**
+ * This aligner aligns coding sequences in protein space.  Each sequence is split into a non-coding first part and a
+ * coding second part (see SplitAligner).  The first part is aligned as DNA.  The coding part is translated using
+ * genetic code 11, the proteins are aligned, and the codons are then threaded back onto the aligned proteins, so
+ * that every protein gap becomes a gap of three nucleotides.  The result is a DNA alignment in which indels in the
+ * coding part are always in frame, and the aligner only sees a third of the coding characters.
+ *
+ * If the length of a coding part is not a multiple of three, the leftover bases at the end are aligned separately
+ * as DNA.  A protein alignment that cannot be threaded back onto the codons is an error.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class CodonAligner extends SplitAligner {
+
+    // FIELDS
+    /** logging facility */
+    protected static Logger log = LoggerFactory.getLogger(CodonAligner.class);
+    /** genetic code for translation */
+    private static final int GENETIC_CODE = 11;
+    /** DNA translator */
+    private DnaTranslator translator;
+    /** number of protein alignments performed */
+    private AtomicInteger proteinCount;
+
+    /**
+     * Construct a codon-threading aligner.
+     *
+     * @param inner			aligner to use for the proteins and the non-coding DNA
+     * @param splitter		function that returns the length of the non-coding part for a sequence label, or -1 if
+     * 						the sequence cannot be split
+     */
+    public CodonAligner(MultiAligner inner, ToIntFunction<String> splitter) {
+        super(inner, splitter);
+        this.translator = new DnaTranslator(GENETIC_CODE);
+        this.proteinCount = new AtomicInteger();
+    }
+
+    @Override
+    protected List<String> alignSecond(List<Sequence> parts) throws IOException, InterruptedException {
+        final int n = parts.size();
+        List<String> retVal;
+        if (allSame(parts))
+            retVal = this.alignSegments(parts);
+        else {
+            this.proteinCount.incrementAndGet();
+            // Translate the complete codons and isolate the leftover bases.
+            List<Sequence> proteins = new ArrayList<Sequence>(n);
+            List<Sequence> tails = new ArrayList<Sequence>(n);
+            for (Sequence part : parts) {
+                String dna = part.getSequence();
+                int codonLen = dna.length() - dna.length() % 3;
+                String protein = this.translator.translate(dna.substring(0, codonLen).toLowerCase());
+                // Stops are changed to unknowns, since some aligners do not accept them.
+                proteins.add(new Sequence(part.getLabel(), part.getComment(), protein.replace('*', 'X')));
+                tails.add(new Sequence(part.getLabel(), part.getComment(), dna.substring(codonLen)));
+            }
+            List<String> proteinRows = this.alignSegments(proteins);
+            List<String> tailRows = this.alignSegments(tails);
+            // Thread the codons onto the aligned proteins.
+            retVal = new ArrayList<String>(n);
+            for (int i = 0; i < n; i++) {
+                String dna = parts.get(i).getSequence();
+                String proteinRow = proteinRows.get(i);
+                StringBuilder row = new StringBuilder(proteinRow.length() * 3 + tailRows.get(i).length());
+                int pos = 0;
+                for (int j = 0; j < proteinRow.length(); j++) {
+                    if (proteinRow.charAt(j) == '-')
+                        row.append("---");
+                    else {
+                        if (pos + 3 > dna.length())
+                            throw new IOException("Protein alignment for " + parts.get(i).getLabel() + " does not match its DNA.");
+                        row.append(dna, pos, pos + 3);
+                        pos += 3;
+                    }
+                }
+                if (pos != dna.length() - dna.length() % 3)
+                    throw new IOException("Protein alignment for " + parts.get(i).getLabel() + " does not match its DNA.");
+                row.append(tailRows.get(i));
+                retVal.add(row.toString());
+            }
+        }
+        return retVal;
+    }
+
+    @Override
+    protected String getPrefix() {
+        return "codon";
+    }
+
+    @Override
+    public void logStats() {
+        super.logStats();
+        log.info("{} coding regions were aligned as proteins.", this.proteinCount.get());
+    }
+
+}
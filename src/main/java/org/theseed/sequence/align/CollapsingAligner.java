@@ -0,0 +1,100 @@
+/**
+ *
+ */
+package org.theseed.sequence.align;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.theseed.sequence.Sequence;
+
+/**
+ * This aligner removes duplicate sequences before alignment.  Sequences with identical text are grouped together,
+ * and only the first sequence in each group is passed to the wrapped aligner.  Afterward, each input sequence gets
+ * a copy of its group representative's aligned row, with its own label and comment.  The output is in the same
+ * order as the input.
+ *
+ * In strain panels, most of the sequences in an alignment are usually identical, so this can greatly reduce the
+ * size of the alignment problem.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class CollapsingAligner extends WrappingAligner {
+
+    // FIELDS
+    /** logging facility */
+    protected static Logger log = LoggerFactory.getLogger(CollapsingAligner.class);
+    /** number of sequences input */
+    private AtomicLong inCount;
+    /** number of sequences actually aligned */
+    private AtomicLong alignCount;
+
+    /**
+     * Construct a collapsing aligner.
+     *
+     * @param inner		aligner to use for the unique sequences
+     */
+    public CollapsingAligner(MultiAligner inner) {
+        super(inner);
+        this.inCount = new AtomicLong();
+        this.alignCount = new AtomicLong();
+    }
+
+    @Override
+    public List<Sequence> align(List<Sequence> sequences) throws IOException, InterruptedException {
+        // Map each sequence text to its group index.  The groups are numbered in order of first occurrence.
+        Map<String, Integer> groupMap = new LinkedHashMap<String, Integer>(sequences.size() * 4 / 3 + 1);
+        List<Sequence> reps = new ArrayList<Sequence>(sequences.size());
+        int[] groups = new int[sequences.size()];
+        for (int i = 0; i < groups.length; i++) {
+            Sequence seq = sequences.get(i);
+            Integer group = groupMap.get(seq.getSequence());
+            if (group == null) {
+                group = reps.size();
+                groupMap.put(seq.getSequence(), group);
+                reps.add(seq);
+            }
+            groups[i] = group;
+        }
+        this.inCount.addAndGet(groups.length);
+        // Align the representatives.  If there is only one, there is nothing to align.
+        List<Sequence> aligned;
+        if (reps.size() <= 1)
+            aligned = reps;
+        else {
+            this.alignCount.addAndGet(reps.size());
+            aligned = this.getInner().align(reps);
+        }
+        // The aligner is allowed to reorder its output, so we map the aligned rows back by label.
+        Map<String, String> rowMap = new LinkedHashMap<String, String>(aligned.size() * 4 / 3 + 1);
+        for (Sequence seq : aligned)
+            rowMap.put(seq.getLabel(), seq.getSequence());
+        // Expand the alignment.
+        List<Sequence> retVal = new ArrayList<Sequence>(groups.length);
+        for (int i = 0; i < groups.length; i++) {
+            Sequence original = sequences.get(i);
+            String row = rowMap.get(reps.get(groups[i]).getLabel());
+            retVal.add(new Sequence(original.getLabel(), original.getComment(), row));
+        }
+        return retVal;
+    }
+
+    @Override
+    protected String getPrefix() {
+        return "collapse";
+    }
+
+    @Override
+    public void logStats() {
+        super.logStats();
+        log.info("{} sequences were reduced to {} unique sequences for alignment.", this.inCount.get(), this.alignCount.get());
+    }
+
+}
@@ -0,0 +1,109 @@
+/**
+ *
+ */
+package org.theseed.sequence.align;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.theseed.sequence.Sequence;
+
+/**
+ * This aligner removes the longest prefix and suffix shared by all the sequences before alignment.  Only the cores
+ * in between are passed to the wrapped aligner, and the prefix and suffix are then re-attached to every aligned row.
+ * Because the re-attached flanks contain no gaps, every position in an input sequence is still at the same ungapped
+ * offset in its aligned row.
+ *
+ * Extended protein regions from related strains normally share long identical flanks, so this greatly reduces the
+ * amount of sequence the aligner sees.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class FlankTrimmingAligner extends WrappingAligner {
+
+    // FIELDS
+    /** logging facility */
+    protected static Logger log = LoggerFactory.getLogger(FlankTrimmingAligner.class);
+    /** total length of input sequences */
+    private AtomicLong inLength;
+    /** total length of trimmed sequences */
+    private AtomicLong trimLength;
+
+    /**
+     * Construct a flank-trimming aligner.
+     *
+     * @param inner		aligner to use for the trimmed cores
+     */
+    public FlankTrimmingAligner(MultiAligner inner) {
+        super(inner);
+        this.inLength = new AtomicLong();
+        this.trimLength = new AtomicLong();
+    }
+
+    @Override
+    public List<Sequence> align(List<Sequence> sequences) throws IOException, InterruptedException {
+        final int n = sequences.size();
+        if (n == 0)
+            return new ArrayList<Sequence>();
+        // Compute the length of the shortest sequence.  The prefix and suffix cannot overlap within it.
+        String first = sequences.get(0).getSequence();
+        int minLen = sequences.stream().mapToInt(x -> x.getSequence().length()).min().getAsInt();
+        // Compute the common prefix length.
+        int prefix = 0;
+        boolean match = true;
+        while (match && prefix < minLen) {
+            char c = first.charAt(prefix);
+            for (int i = 1; match && i < n; i++)
+                match = (sequences.get(i).getSequence().charAt(prefix) == c);
+            if (match) prefix++;
+        }
+        // Compute the common suffix length.
+        int suffix = 0;
+        match = true;
+        while (match && prefix + suffix < minLen) {
+            char c = first.charAt(first.length() - suffix - 1);
+            for (int i = 1; match && i < n; i++) {
+                String seq = sequences.get(i).getSequence();
+                match = (seq.charAt(seq.length() - suffix - 1) == c);
+            }
+            if (match) suffix++;
+        }
+        // Create the trimmed cores.
+        List<Sequence> cores = new ArrayList<Sequence>(n);
+        long total = 0;
+        for (Sequence seq : sequences) {
+            String text = seq.getSequence();
+            total += text.length();
+            cores.add(new Sequence(seq.getLabel(), seq.getComment(), text.substring(prefix, text.length() - suffix)));
+        }
+        this.inLength.addAndGet(total);
+        this.trimLength.addAndGet(total - (long) n * (prefix + suffix));
+        // Align the cores and re-attach the flanks.
+        List<String> rows = this.alignSegments(cores);
+        String prefixText = first.substring(0, prefix);
+        String suffixText = first.substring(first.length() - suffix);
+        List<Sequence> retVal = new ArrayList<Sequence>(n);
+        for (int i = 0; i < n; i++) {
+            Sequence seq = sequences.get(i);
+            retVal.add(new Sequence(seq.getLabel(), seq.getComment(), prefixText + rows.get(i) + suffixText));
+        }
+        return retVal;
+    }
+
+    @Override
+    protected String getPrefix() {
+        return "trim";
+    }
+
+    @Override
+    public void logStats() {
+        super.logStats();
+        log.info("Flank trimming reduced aligner input from {} to {} characters.", this.inLength.get(), this.trimLength.get());
+    }
+
+}
@@ -0,0 +1,214 @@
+/**
+ *
+ */
+package org.theseed.sequence.align;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.theseed.sequence.Sequence;
+
+/**
+ * This aligner isolates each alignment from failures in the wrapped aligner.  Each attempt is limited to a fixed
+ * wall-clock time, and an attempt that times out or fails is retried a limited number of times.  If all the attempts
+ * fail, a cheaper fallback is used instead: a star alignment, an ungapped alignment that simply pads the sequences
+ * to the same length, or no alignment at all.  In the last case, the result is NULL, and the job is treated as
+ * skipped.
+ *
+ * A timed-out attempt is interrupted.  The Clustal aligner kills its child process when this happens.  An in-JVM
+ * aligner may run on in the background until it finishes, but its result is discarded.
+ *
+ * The jobs that timed out or failed are identified by the label of their first sequence (normally the base feature)
+ * and listed in the run statistics.  Because a wrapping aligner may call this one several times for a single job,
+ * with different first sequences, a fallback is also recorded for the calling thread.  A client that runs each job
+ * on one thread can call "startJob" before the job and "isJobFallback" after it to find out whether any part of the
+ * alignment is degraded, so that it is not saved as if it were a real one.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class GuardedAligner extends WrappingAligner {
+
+    // FIELDS
+    /** logging facility */
+    protected static Logger log = LoggerFactory.getLogger(GuardedAligner.class);
+    /** maximum time for an attempt, in seconds, or 0 for no limit */
+    private int timeout;
+    /** number of retries after a failed attempt */
+    private int retries;
+    /** fallback strategy */
+    private Fallback fallback;
+    /** thread pool for timed attempts */
+    private ExecutorService attemptPool;
+    /** labels of jobs with a timed-out attempt */
+    private Queue<String> timedOut;
+    /** labels of jobs that needed the fallback */
+    private Queue<String> fellBack;
+    /** TRUE for a thread if the fallback was used since its last call to startJob */
+    private ThreadLocal<Boolean> jobFallback;
+
+    /**
+     * Enum for the fallback strategies.
+     */
+    public static enum Fallback {
+        /** star alignment to the first sequence */
+        STAR,
+        /** pad the sequences with trailing gaps */
+        UNGAPPED,
+        /** skip the alignment */
+        SKIP;
+
+        /**
+         * @return the fallback alignment for a list of sequences, or NULL if the alignment is to be skipped
+         *
+         * @param sequences		sequences to align
+         */
+        public List<Sequence> align(List<Sequence> sequences) {
+            List<Sequence> retVal = null;
+            switch (this) {
+            case STAR :
+                retVal = new StarAligner().align(sequences);
+                break;
+            case UNGAPPED :
+                retVal = new StubAligner().align(sequences);
+                break;
+            case SKIP :
+                break;
+            }
+            return retVal;
+        }
+    }
+
+    /**
+     * Construct a guarded aligner.
+     *
+     * @param inner		aligner to guard
+     * @param timeout	maximum time for an attempt, in seconds, or 0 for no limit
+     * @param retries	number of retries after a failed attempt
+     * @param fallback	fallback strategy when all the attempts fail
+     */
+    public GuardedAligner(MultiAligner inner, int timeout, int retries, Fallback fallback) {
+        super(inner);
+        this.timeout = timeout;
+        this.retries = retries;
+        this.fallback = fallback;
+        this.attemptPool = Executors.newCachedThreadPool(r -> {
+            Thread retVal = new Thread(r, "align-attempt");
+            retVal.setDaemon(true);
+            return retVal;
+        });
+        this.timedOut = new ConcurrentLinkedQueue<String>();
+        this.fellBack = new ConcurrentLinkedQueue<String>();
+        this.jobFallback = ThreadLocal.withInitial(() -> Boolean.FALSE);
+    }
+
+    @Override
+    public List<Sequence> align(List<Sequence> sequences) throws IOException, InterruptedException {
+        if (sequences.isEmpty())
+            return new ArrayList<Sequence>();
+        String label = sequences.get(0).getLabel();
+        List<Sequence> retVal = null;
+        boolean done = false;
+        boolean timeFail = false;
+        for (int attempt = 0; ! done && attempt <= this.retries; attempt++) {
+            try {
+                retVal = this.attempt(sequences);
+                done = true;
+            } catch (TimeoutException e) {
+                log.warn("Alignment for {} timed out after {} seconds on attempt {}.", label, this.timeout, attempt + 1);
+                timeFail = true;
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                log.warn("Alignment for {} failed on attempt {}: {}", label, attempt + 1, e.toString());
+            }
+        }
+        if (timeFail)
+            this.timedOut.add(label);
+        if (! done) {
+            log.error("All alignment attempts failed for {}.  Using {} fallback.", label, this.fallback);
+            this.fellBack.add(label);
+            this.jobFallback.set(Boolean.TRUE);
+            retVal = this.fallback.align(sequences);
+        }
+        return retVal;
+    }
+
+    /**
+     * Make one attempt at an alignment.
+     *
+     * @param sequences		sequences to align
+     *
+     * @return the aligned sequences
+     *
+     * @throws Exception
+     */
+    private List<Sequence> attempt(List<Sequence> sequences) throws Exception {
+        List<Sequence> retVal;
+        if (this.timeout <= 0)
+            retVal = this.getInner().align(sequences);
+        else {
+            Future<List<Sequence>> result = this.attemptPool.submit(() -> this.getInner().align(sequences));
+            try {
+                retVal = result.get(this.timeout, TimeUnit.SECONDS);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof Exception)
+                    throw (Exception) cause;
+                throw e;
+            } finally {
+                // This does nothing if the attempt completed.
+                result.cancel(true);
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * Start tracking fallbacks for a new job on the current thread.
+     */
+    public void startJob() {
+        this.jobFallback.set(Boolean.FALSE);
+    }
+
+    /**
+     * @return TRUE if any alignment on the current thread used the fallback since the last call to startJob
+     */
+    public boolean isJobFallback() {
+        return this.jobFallback.get();
+    }
+
+    @Override
+    protected String getPrefix() {
+        return "guarded";
+    }
+
+    @Override
+    public String getName() {
+        // The guard does not change a successful alignment, so it is invisible to the cache and the journal.
+        return this.getInner().getName();
+    }
+
+    @Override
+    public void logStats() {
+        super.logStats();
+        if (! this.timedOut.isEmpty())
+            log.warn("{} alignments timed out: {}", this.timedOut.size(), StringUtils.join(this.timedOut, ", "));
+        if (! this.fellBack.isEmpty())
+            log.warn("{} alignments used the {} fallback: {}", this.fellBack.size(), this.fallback,
+                    StringUtils.join(this.fellBack, ", "));
+    }
+
+}
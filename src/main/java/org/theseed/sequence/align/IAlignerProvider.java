@@ -0,0 +1,31 @@
+/**
+ *
+ */
+package org.theseed.sequence.align;
+
+import java.io.File;
+
+/**
+ * This interface describes a provider of multiple-sequence aligners.  Providers are discovered at run time using
+ * the standard ServiceLoader mechanism, so a new aligner can be added by putting a jar on the class path that lists
+ * its provider in "META-INF/services/org.theseed.sequence.align.IAlignerProvider".  The user selects an aligner by
+ * the provider's name.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public interface IAlignerProvider {
+
+    /**
+     * @return the name used to select this aligner on the command line
+     */
+    String getName();
+
+    /**
+     * @return a new aligner from this provider
+     *
+     * @param workDir	working directory for temporary files
+     */
+    MultiAligner create(File workDir);
+
+}
@@ -0,0 +1,141 @@
+/**
+ *
+ */
+package org.theseed.sequence.align;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.theseed.sequence.Sequence;
+
+/**
+ * This is a progressive multiple-sequence aligner that runs entirely in the JVM.  It is intended for the sets of
+ * near-identical strain sequences we normally align, where the cost of starting an external aligner dominates the
+ * actual work.
+ *
+ * The sequences are first clustered into a guide tree using UPGMA on a kmer distance.  The tree is then used to merge
+ * the sequences into profiles, pairing the closest profiles first.  Each merge is a banded profile-profile alignment
+ * (see ProfileAligner).  The output sequences are in the same order as the input.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class JavaAligner extends MultiAligner {
+
+    // FIELDS
+    /** kmer size for guide-tree distances */
+    private static final int KMER_SIZE = 6;
+    /** initial half-width of the alignment band */
+    private static final int BAND_WIDTH = 32;
+
+    @Override
+    public List<Sequence> align(List<Sequence> sequences) {
+        final int n = sequences.size();
+        if (n == 0)
+            return new ArrayList<Sequence>();
+        ProfileAligner aligner = new ProfileAligner(BAND_WIDTH);
+        // Create the initial profiles and the kmer sets for the distances.
+        List<ProfileAligner.Profile> profiles = new ArrayList<ProfileAligner.Profile>(n);
+        List<Set<String>> kmers = new ArrayList<Set<String>>(n);
+        for (int i = 0; i < n; i++) {
+            String seq = sequences.get(i).getSequence();
+            profiles.add(new ProfileAligner.Profile(i, seq));
+            kmers.add(kmerSet(seq));
+        }
+        // Compute the distance matrix and cluster sizes.
+        double[][] dist = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                double d = distance(kmers.get(i), kmers.get(j));
+                dist[i][j] = d;
+                dist[j][i] = d;
+            }
+        }
+        int[] sizes = new int[n];
+        for (int i = 0; i < n; i++)
+            sizes[i] = 1;
+        // Merge the closest pair of profiles until only one is left.  Merged-away profiles are set to NULL.
+        ProfileAligner.Profile last = profiles.get(0);
+        for (int round = 1; round < n; round++) {
+            int best1 = -1;
+            int best2 = -1;
+            double bestDist = Double.MAX_VALUE;
+            for (int i = 0; i < n; i++) {
+                if (profiles.get(i) != null) {
+                    for (int j = i + 1; j < n; j++) {
+                        if (profiles.get(j) != null && dist[i][j] < bestDist) {
+                            best1 = i;
+                            best2 = j;
+                            bestDist = dist[i][j];
+                        }
+                    }
+                }
+            }
+            last = aligner.align(profiles.get(best1), profiles.get(best2));
+            profiles.set(best1, last);
+            profiles.set(best2, null);
+            // Update the distances to the merged cluster using the UPGMA average.
+            for (int k = 0; k < n; k++) {
+                if (k != best1 && profiles.get(k) != null) {
+                    double d = (dist[best1][k] * sizes[best1] + dist[best2][k] * sizes[best2]) / (sizes[best1] + sizes[best2]);
+                    dist[best1][k] = d;
+                    dist[k][best1] = d;
+                }
+            }
+            sizes[best1] += sizes[best2];
+        }
+        // Unspool the final profile in the original order.
+        Sequence[] aligned = new Sequence[n];
+        List<char[]> rows = last.getRows();
+        List<Integer> indices = last.getIndices();
+        for (int i = 0; i < rows.size(); i++) {
+            int idx = indices.get(i);
+            Sequence original = sequences.get(idx);
+            aligned[idx] = new Sequence(original.getLabel(), original.getComment(), String.valueOf(rows.get(i)));
+        }
+        List<Sequence> retVal = new ArrayList<Sequence>(n);
+        for (Sequence seq : aligned)
+            retVal.add(seq);
+        return retVal;
+    }
+
+    /**
+     * @return the set of kmers in a sequence
+     *
+     * @param seq	sequence to process
+     */
+    private static Set<String> kmerSet(String seq) {
+        String normal = seq.toUpperCase();
+        Set<String> retVal = new HashSet<String>(normal.length() * 2);
+        for (int i = 0; i + KMER_SIZE <= normal.length(); i++)
+            retVal.add(normal.substring(i, i + KMER_SIZE));
+        return retVal;
+    }
+
+    /**
+     * @return the Jaccard distance between two kmer sets
+     *
+     * @param k1	first kmer set
+     * @param k2	second kmer set
+     */
+    private static double distance(Set<String> k1, Set<String> k2) {
+        double retVal = 1.0;
+        if (! k1.isEmpty() && ! k2.isEmpty()) {
+            int common = 0;
+            for (String kmer : k1) {
+                if (k2.contains(kmer))
+                    common++;
+            }
+            retVal = 1.0 - ((double) common) / (k1.size() + k2.size() - common);
+        }
+        return retVal;
+    }
+
+    @Override
+    public String getName() {
+        return "java";
+    }
+
+}
@@ -0,0 +1,26 @@
+/**
+ *
+ */
+package org.theseed.sequence.align;
+
+import java.io.File;
+
+/**
+ * This is the provider for the in-JVM progressive aligner.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class JavaAlignerProvider implements IAlignerProvider {
+
+    @Override
+    public String getName() {
+        return "java";
+    }
+
+    @Override
+    public MultiAligner create(File workDir) {
+        return new JavaAligner();
+    }
+
+}
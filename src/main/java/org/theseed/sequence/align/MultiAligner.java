@@ -0,0 +1,153 @@
+/**
+ *
+ */
+package org.theseed.sequence.align;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.ToIntFunction;
+
+import org.apache.commons.lang3.StringUtils;
+import org.theseed.basic.ParseFailureException;
+import org.theseed.sequence.Sequence;
+
+/**
+ * This is the base class for a multiple-sequence aligner.  The aligner takes as input a list of sequences and
+ * returns a list of aligned sequences with the same labels and comments.  The aligned sequences all have the
+ * same length, with gaps indicated by hyphens.  Aligners must be thread-safe, since a single aligner will be
+ * used by all the workers in an alignment executor.
+ *
+ * The available aligners are found by name using the IAlignerProvider service.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public abstract class MultiAligner {
+
+    /**
+     * @return a new aligner of the named type
+     *
+     * @param name		name of the aligner provider
+     * @param workDir	working directory for temporary files
+     *
+     * @throws ParseFailureException
+     */
+    public static MultiAligner create(String name, File workDir) throws ParseFailureException {
+        MultiAligner retVal = null;
+        for (IAlignerProvider provider : ServiceLoader.load(IAlignerProvider.class)) {
+            if (provider.getName().equalsIgnoreCase(name)) {
+                retVal = provider.create(workDir);
+                break;
+            }
+        }
+        if (retVal == null)
+            throw new ParseFailureException("Unknown aligner type \"" + name + "\".  Available aligners are "
+                    + StringUtils.join(getNames(), ", ") + ".");
+        return retVal;
+    }
+
+    /**
+     * @return the names of the available aligners
+     */
+    public static Set<String> getNames() {
+        Set<String> retVal = new TreeSet<String>();
+        for (IAlignerProvider provider : ServiceLoader.load(IAlignerProvider.class))
+            retVal.add(provider.getName());
+        return retVal;
+    }
+
+    /**
+     * Enum for the different alignment modes.
+     */
+    public static enum Mode {
+        /** full multiple-sequence alignment */
+        PROGRESSIVE,
+        /** pairwise alignment of each sequence to the base, merged into a star alignment */
+        STAR,
+        /** full alignment of the segments between shared kmer anchors */
+        ANCHOR;
+
+        /**
+         * @return the aligner to use for this mode
+         *
+         * @param aligner	multiple-sequence aligner selected by the user (ignored in STAR mode, which does its own
+         * 					pairwise alignments)
+         */
+        public MultiAligner create(MultiAligner aligner) {
+            MultiAligner retVal = aligner;
+            switch (this) {
+            case PROGRESSIVE :
+                break;
+            case STAR :
+                retVal = new StarAligner();
+                break;
+            case ANCHOR :
+                retVal = new AnchorAligner(aligner);
+                break;
+            }
+            return retVal;
+        }
+    }
+
+    /**
+     * Enum for the alignment spaces of coding sequences.
+     */
+    public static enum Space {
+        /** align the coding DNA as nucleotides */
+        DNA,
+        /** align the translated proteins and thread the codons back onto the result */
+        PROTEIN;
+
+        /**
+         * @return an aligner that aligns the non-coding and coding parts of each sequence separately
+         *
+         * @param aligner	aligner for the parts
+         * @param splitter	function that returns the length of the non-coding part for a sequence label, or -1 if
+         * 					the sequence cannot be split
+         */
+        public MultiAligner create(MultiAligner aligner, ToIntFunction<String> splitter) {
+            MultiAligner retVal = null;
+            switch (this) {
+            case DNA :
+                retVal = new SplitAligner(aligner, splitter);
+                break;
+            case PROTEIN :
+                retVal = new CodonAligner(aligner, splitter);
+                break;
+            }
+            return retVal;
+        }
+    }
+
+    /**
+     * Align a list of sequences.
+     *
+     * @param sequences		list of sequences to align
+     *
+     * @return a list of aligned sequences
+     *
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public abstract List<Sequence> align(List<Sequence> sequences) throws IOException, InterruptedException;
+
+    /**
+     * @return a name identifying this aligner and its configuration
+     */
+    public abstract String getName();
+
+    /**
+     * Write statistics about the alignments performed to the log.  The default is to write nothing.
+     */
+    public void logStats() { }
+
+    @Override
+    public String toString() {
+        return this.getName();
+    }
+
+}
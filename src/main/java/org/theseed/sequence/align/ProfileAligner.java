@@ -0,0 +1,404 @@
+/**
+ *
+ */
+package org.theseed.sequence.align;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This object performs a banded global alignment between two profiles.  A profile is a set of rows that are already
+ * aligned with each other.  The alignment uses affine gap penalties, except that gaps at either end of the alignment
+ * are free.  This allows sequences with different start calls to line up without scattering gaps through the middle.
+ *
+ * The dynamic-programming matrix is restricted to a band of diagonals around the difference in profile widths.  If the
+ * best path touches the edge of the band, the band is doubled and the alignment is repeated, so the result is the same
+ * as an unbanded alignment unless the sequences are very different.  For the near-identical sequences we normally
+ * align, the cost is proportional to the profile width times the band width.
+ *
+ * Residues are compared without regard to case, but the original characters are preserved in the output.
+ *
+ * @author Bruce Parrello
+ *
+ */
+class ProfileAligner {
+
+    // FIELDS
+    /** score for a residue match */
+    private static final double MATCH = 5.0;
+    /** score for a residue mismatch */
+    private static final double MISMATCH = -4.0;
+    /** penalty for opening a gap */
+    private static final double GAP_OPEN = -10.0;
+    /** penalty for each gap position */
+    private static final double GAP_EXTEND = -1.0;
+    /** value used for an impossible cell */
+    private static final double NONE = Double.NEGATIVE_INFINITY;
+    /** traceback code for the match state */
+    private static final byte FROM_M = 0;
+    /** traceback code for the gap-in-B state */
+    private static final byte FROM_X = 1;
+    /** traceback code for the gap-in-A state */
+    private static final byte FROM_Y = 2;
+    /** initial half-width of the band */
+    private int initialBand;
+
+    /**
+     * This class represents a profile.  Each row is a character array of the same length, and each column is
+     * summarized by the residues it contains and their counts.
+     */
+    static class Profile {
+
+        /** aligned rows */
+        private List<char[]> rows;
+        /** indices of the original sequences for the rows */
+        private List<Integer> indices;
+        /** residue codes for each column */
+        private int[][] codes;
+        /** residue counts for each column */
+        private int[][] counts;
+
+        /**
+         * Create a profile for a single sequence.
+         *
+         * @param index		index of the sequence
+         * @param seq		sequence text
+         */
+        protected Profile(int index, String seq) {
+            this.rows = new ArrayList<char[]>(1);
+            this.rows.add(seq.toCharArray());
+            this.indices = new ArrayList<Integer>(1);
+            this.indices.add(index);
+            this.summarize();
+        }
+
+        /**
+         * Create a profile from a list of rows.
+         *
+         * @param rows		list of aligned rows
+         * @param indices	list of sequence indices for the rows
+         */
+        protected Profile(List<char[]> rows, List<Integer> indices) {
+            this.rows = rows;
+            this.indices = indices;
+            this.summarize();
+        }
+
+        /**
+         * Compute the column summaries.
+         */
+        private void summarize() {
+            final int width = this.width();
+            this.codes = new int[width][];
+            this.counts = new int[width][];
+            int[] buffer = new int[this.rows.size()];
+            int[] bufCount = new int[this.rows.size()];
+            for (int c = 0; c < width; c++) {
+                int n = 0;
+                for (char[] row : this.rows) {
+                    char ch = row[c];
+                    if (! isGap(ch)) {
+                        int code = Character.toUpperCase(ch);
+                        int i = 0;
+                        while (i < n && buffer[i] != code) i++;
+                        if (i < n)
+                            bufCount[i]++;
+                        else {
+                            buffer[n] = code;
+                            bufCount[n] = 1;
+                            n++;
+                        }
+                    }
+                }
+                this.codes[c] = Arrays.copyOf(buffer, n);
+                this.counts[c] = Arrays.copyOf(bufCount, n);
+            }
+        }
+
+        /**
+         * @return the number of columns in this profile
+         */
+        protected int width() {
+            return this.rows.get(0).length;
+        }
+
+        /**
+         * @return the number of rows in this profile
+         */
+        protected int size() {
+            return this.rows.size();
+        }
+
+        /**
+         * @return the aligned rows
+         */
+        protected List<char[]> getRows() {
+            return this.rows;
+        }
+
+        /**
+         * @return the original sequence indices of the rows
+         */
+        protected List<Integer> getIndices() {
+            return this.indices;
+        }
+
+    }
+
+    /**
+     * Construct a profile aligner.
+     *
+     * @param band		initial half-width of the band
+     */
+    protected ProfileAligner(int band) {
+        this.initialBand = band;
+    }
+
+    /**
+     * @return TRUE if the specified character is a gap
+     *
+     * @param ch	character to check
+     */
+    protected static boolean isGap(char ch) {
+        return (ch == '-' || ch == '.');
+    }
+
+    /**
+     * @return the score for aligning two profile columns
+     *
+     * @param a		first profile
+     * @param ac	column index in first profile
+     * @param b		second profile
+     * @param bc	column index in second profile
+     */
+    private static double score(Profile a, int ac, Profile b, int bc) {
+        int[] aCodes = a.codes[ac];
+        int[] aCounts = a.counts[ac];
+        int[] bCodes = b.codes[bc];
+        int[] bCounts = b.counts[bc];
+        double total = 0.0;
+        for (int i = 0; i < aCodes.length; i++) {
+            for (int j = 0; j < bCodes.length; j++) {
+                double pairs = aCounts[i] * bCounts[j];
+                total += pairs * (aCodes[i] == bCodes[j] ? MATCH : MISMATCH);
+            }
+        }
+        return total / (a.size() * b.size());
+    }
+
+    /**
+     * Align two profiles to produce a merged profile.
+     *
+     * @param a		first profile
+     * @param b		second profile
+     *
+     * @return a profile containing the rows of both input profiles
+     */
+    protected Profile align(Profile a, Profile b) {
+        final int m = a.width();
+        final int n = b.width();
+        int band = this.initialBand;
+        byte[] ops = null;
+        while (ops == null) {
+            int dLo = Math.min(0, n - m) - band;
+            int dHi = Math.max(0, n - m) + band;
+            ops = this.alignBand(a, b, dLo, dHi);
+            band *= 2;
+        }
+        // Now use the operations to build the merged rows.
+        List<char[]> rows = new ArrayList<char[]>(a.size() + b.size());
+        for (char[] row : a.getRows())
+            rows.add(thread(row, ops, FROM_Y));
+        for (char[] row : b.getRows())
+            rows.add(thread(row, ops, FROM_X));
+        List<Integer> indices = new ArrayList<Integer>(rows.size());
+        indices.addAll(a.getIndices());
+        indices.addAll(b.getIndices());
+        return new Profile(rows, indices);
+    }
+
+    /**
+     * Apply a list of alignment operations to a profile row.
+     *
+     * @param row		row to expand
+     * @param ops		list of alignment operations
+     * @param gapOp		operation that inserts a gap in this row
+     *
+     * @return the expanded row
+     */
+    private static char[] thread(char[] row, byte[] ops, byte gapOp) {
+        char[] retVal = new char[ops.length];
+        int pos = 0;
+        for (int i = 0; i < ops.length; i++) {
+            if (ops[i] == gapOp)
+                retVal[i] = '-';
+            else {
+                retVal[i] = row[pos];
+                pos++;
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * Perform the banded dynamic-programming alignment.  The matrix cell (i,j) represents the first i columns of A
+     * aligned with the first j columns of B.  Only cells whose diagonal (j - i) is in the band are computed.
+     *
+     * @param a			first profile
+     * @param b			second profile
+     * @param dLo		lowest diagonal in the band
+     * @param dHi		highest diagonal in the band
+     *
+     * @return the list of alignment operations (FROM_M for a column pair, FROM_X for a gap in B, FROM_Y for a gap in A),
+     * 		   or NULL if the path touched the edge of the band
+     */
+    private byte[] alignBand(Profile a, Profile b, int dLo, int dHi) {
+        final int m = a.width();
+        final int n = b.width();
+        final int w = dHi - dLo + 1;
+        // Determine which edges of the band cut off part of the matrix.
+        final boolean lowCut = (dLo > -m);
+        final boolean highCut = (dHi < n);
+        // Score arrays for the previous and current rows.
+        double[] prevM = new double[w];
+        double[] prevX = new double[w];
+        double[] prevY = new double[w];
+        double[] curM = new double[w];
+        double[] curX = new double[w];
+        double[] curY = new double[w];
+        // Traceback arrays for each state.
+        byte[][] tbM = new byte[m + 1][w];
+        byte[][] tbX = new byte[m + 1][w];
+        byte[][] tbY = new byte[m + 1][w];
+        // Initialize row 0.  Leading gaps are free.
+        Arrays.fill(prevM, NONE);
+        Arrays.fill(prevX, NONE);
+        Arrays.fill(prevY, NONE);
+        for (int j = Math.max(0, dLo); j <= Math.min(n, dHi); j++) {
+            int k = j - dLo;
+            if (j == 0)
+                prevM[k] = 0.0;
+            else {
+                prevY[k] = 0.0;
+                tbY[0][k] = (j == 1 ? FROM_M : FROM_Y);
+            }
+        }
+        // Process the remaining rows.
+        for (int i = 1; i <= m; i++) {
+            Arrays.fill(curM, NONE);
+            Arrays.fill(curX, NONE);
+            Arrays.fill(curY, NONE);
+            int jLo = Math.max(0, i + dLo);
+            int jHi = Math.min(n, i + dHi);
+            for (int j = jLo; j <= jHi; j++) {
+                int k = j - i - dLo;
+                if (j == 0) {
+                    // Leading gap in B is free.
+                    curX[k] = 0.0;
+                    tbX[i][k] = (i == 1 ? FROM_M : FROM_X);
+                } else {
+                    // Match state comes from the diagonal, which is the same band index in the previous row.
+                    double best = prevM[k];
+                    byte from = FROM_M;
+                    if (prevX[k] > best) {
+                        best = prevX[k];
+                        from = FROM_X;
+                    }
+                    if (prevY[k] > best) {
+                        best = prevY[k];
+                        from = FROM_Y;
+                    }
+                    if (best > NONE) {
+                        curM[k] = best + score(a, i - 1, b, j - 1);
+                        tbM[i][k] = from;
+                    }
+                    // Gap in B comes from the cell above, which is the next band index in the previous row.
+                    // Trailing gaps are free.
+                    if (k + 1 < w) {
+                        double open = (j == n ? 0.0 : GAP_OPEN + GAP_EXTEND);
+                        double extend = (j == n ? 0.0 : GAP_EXTEND);
+                        best = prevM[k + 1] + open;
+                        from = FROM_M;
+                        if (prevX[k + 1] + extend > best) {
+                            best = prevX[k + 1] + extend;
+                            from = FROM_X;
+                        }
+                        if (prevY[k + 1] + open > best) {
+                            best = prevY[k + 1] + open;
+                            from = FROM_Y;
+                        }
+                        curX[k] = best;
+                        tbX[i][k] = from;
+                    }
+                    // Gap in A comes from the cell to the left, which is the previous band index in this row.
+                    if (k > 0) {
+                        double open = (i == m ? 0.0 : GAP_OPEN + GAP_EXTEND);
+                        double extend = (i == m ? 0.0 : GAP_EXTEND);
+                        best = curM[k - 1] + open;
+                        from = FROM_M;
+                        if (curY[k - 1] + extend > best) {
+                            best = curY[k - 1] + extend;
+                            from = FROM_Y;
+                        }
+                        if (curX[k - 1] + open > best) {
+                            best = curX[k - 1] + open;
+                            from = FROM_X;
+                        }
+                        curY[k] = best;
+                        tbY[i][k] = from;
+                    }
+                }
+            }
+            // Swap the rows.
+            double[] temp = prevM; prevM = curM; curM = temp;
+            temp = prevX; prevX = curX; curX = temp;
+            temp = prevY; prevY = curY; curY = temp;
+        }
+        // Find the best state in the final cell.
+        int k = n - m - dLo;
+        byte state = FROM_M;
+        double best = prevM[k];
+        if (prevX[k] > best) {
+            best = prevX[k];
+            state = FROM_X;
+        }
+        if (prevY[k] > best) {
+            best = prevY[k];
+            state = FROM_Y;
+        }
+        // Trace back the path.
+        byte[] buffer = new byte[m + n];
+        int len = 0;
+        int i = m;
+        int j = n;
+        while (i > 0 || j > 0) {
+            k = j - i - dLo;
+            if (lowCut && k == 0 || highCut && k == w - 1)
+                return null;
+            byte next;
+            buffer[len++] = state;
+            switch (state) {
+            case FROM_M :
+                next = tbM[i][k];
+                i--;
+                j--;
+                break;
+            case FROM_X :
+                next = tbX[i][k];
+                i--;
+                break;
+            default :
+                next = tbY[i][k];
+                j--;
+            }
+            state = next;
+        }
+        // Reverse the operations, since we traced them from the end.
+        byte[] retVal = new byte[len];
+        for (int p = 0; p < len; p++)
+            retVal[p] = buffer[len - p - 1];
+        return retVal;
+    }
+
+}
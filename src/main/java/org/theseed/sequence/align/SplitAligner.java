@@ -0,0 +1,134 @@
+/**
+ *
+ */
+package org.theseed.sequence.align;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToIntFunction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.theseed.sequence.Sequence;
+
+/**
+ * This aligner splits each sequence into two parts at a known boundary and aligns the parts separately.  It is used
+ * for extended protein regions, where the first part is the upstream DNA and the second is the coding sequence.
+ * The boundary for each sequence is supplied by a function on its label.  If the boundary for any sequence is
+ * unknown, the sequences are aligned whole.
+ *
+ * A part that is identical in every sequence is not aligned at all, so a set of genes that differ only in their
+ * promoters is aligned over the upstream region alone.  The aligned parts are concatenated, so every position in an
+ * input sequence is still at the same ungapped offset in its aligned row, and a position is upstream in the output
+ * exactly when it was upstream in the input.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class SplitAligner extends WrappingAligner {
+
+    // FIELDS
+    /** logging facility */
+    protected static Logger log = LoggerFactory.getLogger(SplitAligner.class);
+    /** function to compute the boundary for a sequence label, or -1 if it is unknown */
+    private ToIntFunction<String> splitter;
+    /** number of alignments split */
+    private AtomicInteger splitCount;
+    /** number of first parts that needed no alignment */
+    private AtomicInteger firstSame;
+    /** number of second parts that needed no alignment */
+    private AtomicInteger secondSame;
+
+    /**
+     * Construct a splitting aligner.
+     *
+     * @param inner			aligner to use for the parts
+     * @param splitter		function that returns the length of the first part for a sequence label, or -1 if
+     * 						the sequence cannot be split
+     */
+    public SplitAligner(MultiAligner inner, ToIntFunction<String> splitter) {
+        super(inner);
+        this.splitter = splitter;
+        this.splitCount = new AtomicInteger();
+        this.firstSame = new AtomicInteger();
+        this.secondSame = new AtomicInteger();
+    }
+
+    @Override
+    public List<Sequence> align(List<Sequence> sequences) throws IOException, InterruptedException {
+        final int n = sequences.size();
+        // Compute the split points.  If any is invalid, we align the whole sequences.
+        int[] splits = new int[n];
+        boolean ok = true;
+        for (int i = 0; ok && i < n; i++) {
+            Sequence seq = sequences.get(i);
+            splits[i] = this.splitter.applyAsInt(seq.getLabel());
+            ok = (splits[i] >= 0 && splits[i] <= seq.getSequence().length());
+        }
+        List<Sequence> retVal;
+        if (! ok || n == 0)
+            retVal = this.getInner().align(sequences);
+        else {
+            this.splitCount.incrementAndGet();
+            List<Sequence> firsts = new ArrayList<Sequence>(n);
+            List<Sequence> seconds = new ArrayList<Sequence>(n);
+            for (int i = 0; i < n; i++) {
+                Sequence seq = sequences.get(i);
+                String text = seq.getSequence();
+                firsts.add(new Sequence(seq.getLabel(), seq.getComment(), text.substring(0, splits[i])));
+                seconds.add(new Sequence(seq.getLabel(), seq.getComment(), text.substring(splits[i])));
+            }
+            if (allSame(firsts))
+                this.firstSame.incrementAndGet();
+            if (allSame(seconds))
+                this.secondSame.incrementAndGet();
+            List<String> firstRows = this.alignSegments(firsts);
+            List<String> secondRows = this.alignSecond(seconds);
+            retVal = new ArrayList<Sequence>(n);
+            for (int i = 0; i < n; i++) {
+                Sequence seq = sequences.get(i);
+                retVal.add(new Sequence(seq.getLabel(), seq.getComment(), firstRows.get(i) + secondRows.get(i)));
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * @return TRUE if all the specified sequence parts are identical
+     *
+     * @param parts		list of sequence parts to check
+     */
+    protected static boolean allSame(List<Sequence> parts) {
+        String first = parts.get(0).getSequence();
+        return parts.stream().allMatch(x -> x.getSequence().equals(first));
+    }
+
+    /**
+     * Align the second parts of the sequences.  The default is to align them like any other segments.
+     *
+     * @param parts		list of second parts to align
+     *
+     * @return the aligned rows, in input order
+     *
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    protected List<String> alignSecond(List<Sequence> parts) throws IOException, InterruptedException {
+        return this.alignSegments(parts);
+    }
+
+    @Override
+    protected String getPrefix() {
+        return "split";
+    }
+
+    @Override
+    public void logStats() {
+        super.logStats();
+        log.info("{} alignments were split.  {} needed no upstream alignment, {} needed no coding alignment.",
+                this.splitCount.get(), this.firstSame.get(), this.secondSame.get());
+    }
+
+}
@@ -0,0 +1,132 @@
+/**
+ *
+ */
+package org.theseed.sequence.align;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.theseed.sequence.Sequence;
+
+/**
+ * This aligner builds a star alignment around the first sequence, which is taken as the base.  Each other sequence is
+ * aligned pairwise to the base using a banded dynamic-programming alignment, and the pairwise alignments are then
+ * merged into a single multiple alignment.  Wherever any sequence has an insertion relative to the base, all the
+ * other sequences get gaps.
+ *
+ * Snip reporting only compares sequences to the base, so this is sufficient for our purposes, and the cost is
+ * proportional to the number of sequences times the sequence length times the band width.  The pairwise alignments
+ * are computed in parallel.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class StarAligner extends MultiAligner {
+
+    // FIELDS
+    /** initial half-width of the alignment band */
+    private static final int BAND_WIDTH = 32;
+
+    /**
+     * This object describes a single sequence aligned to the base.  For each base position, it contains the characters
+     * inserted before that position and the character aligned to it.
+     */
+    private static class PairAlignment {
+
+        /** characters inserted before each base position (the last entry is for the end) */
+        private StringBuilder[] inserts;
+        /** character aligned to each base position */
+        private char[] aligned;
+
+        /**
+         * Create a pair alignment from aligned rows.
+         *
+         * @param baseRow	aligned row for the base
+         * @param otherRow	aligned row for the other sequence
+         * @param baseLen	length of the base sequence
+         */
+        protected PairAlignment(char[] baseRow, char[] otherRow, int baseLen) {
+            this.inserts = new StringBuilder[baseLen + 1];
+            this.aligned = new char[baseLen];
+            int pos = 0;
+            for (int i = 0; i < baseRow.length; i++) {
+                if (ProfileAligner.isGap(baseRow[i])) {
+                    if (this.inserts[pos] == null)
+                        this.inserts[pos] = new StringBuilder();
+                    this.inserts[pos].append(otherRow[i]);
+                } else {
+                    this.aligned[pos] = otherRow[i];
+                    pos++;
+                }
+            }
+        }
+
+        /**
+         * @return the number of characters inserted before the specified base position
+         *
+         * @param pos	base position of interest
+         */
+        protected int insertLength(int pos) {
+            return (this.inserts[pos] == null ? 0 : this.inserts[pos].length());
+        }
+
+    }
+
+    @Override
+    public List<Sequence> align(List<Sequence> sequences) {
+        final int n = sequences.size();
+        List<Sequence> retVal = new ArrayList<Sequence>(n);
+        if (n > 0) {
+            String base = sequences.get(0).getSequence();
+            final int baseLen = base.length();
+            ProfileAligner aligner = new ProfileAligner(BAND_WIDTH);
+            ProfileAligner.Profile baseProfile = new ProfileAligner.Profile(0, base);
+            // Compute the pairwise alignments in parallel.
+            List<PairAlignment> pairs = IntStream.range(1, n).parallel().mapToObj(i -> {
+                ProfileAligner.Profile merged = aligner.align(baseProfile, new ProfileAligner.Profile(i, sequences.get(i).getSequence()));
+                return new PairAlignment(merged.getRows().get(0), merged.getRows().get(1), baseLen);
+            }).collect(Collectors.toList());
+            // Compute the maximum insertion before each base position.
+            int[] maxInserts = new int[baseLen + 1];
+            for (PairAlignment pair : pairs) {
+                for (int p = 0; p <= baseLen; p++)
+                    maxInserts[p] = Math.max(maxInserts[p], pair.insertLength(p));
+            }
+            // Build the base row.
+            StringBuilder buffer = new StringBuilder(baseLen * 2);
+            for (int p = 0; p <= baseLen; p++) {
+                for (int k = 0; k < maxInserts[p]; k++)
+                    buffer.append('-');
+                if (p < baseLen)
+                    buffer.append(base.charAt(p));
+            }
+            Sequence baseSeq = sequences.get(0);
+            retVal.add(new Sequence(baseSeq.getLabel(), baseSeq.getComment(), buffer.toString()));
+            // Build the other rows.  Each row's insertions are padded on the right to the maximum insertion length.
+            for (int i = 1; i < n; i++) {
+                PairAlignment pair = pairs.get(i - 1);
+                buffer.setLength(0);
+                for (int p = 0; p <= baseLen; p++) {
+                    int len = pair.insertLength(p);
+                    if (len > 0)
+                        buffer.append(pair.inserts[p]);
+                    for (int k = len; k < maxInserts[p]; k++)
+                        buffer.append('-');
+                    if (p < baseLen)
+                        buffer.append(pair.aligned[p]);
+                }
+                Sequence seq = sequences.get(i);
+                retVal.add(new Sequence(seq.getLabel(), seq.getComment(), buffer.toString()));
+            }
+        }
+        return retVal;
+    }
+
+    @Override
+    public String getName() {
+        return "star";
+    }
+
+}
@@ -0,0 +1,37 @@
+/**
+ *
+ */
+package org.theseed.sequence.align;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+import org.theseed.sequence.Sequence;
+
+/**
+ * This is a trivial aligner that pads each sequence with trailing gaps to the length of the longest one.  It makes
+ * no attempt to find the best alignment, but it is fast, deterministic, and has no external dependencies, so it is
+ * useful for tests and for benchmarking the rest of the pipeline.  It is also the cheapest fallback when a real
+ * alignment fails.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class StubAligner extends MultiAligner {
+
+    @Override
+    public List<Sequence> align(List<Sequence> sequences) {
+        int width = sequences.stream().mapToInt(x -> x.getSequence().length()).max().orElse(0);
+        List<Sequence> retVal = new ArrayList<Sequence>(sequences.size());
+        for (Sequence seq : sequences)
+            retVal.add(new Sequence(seq.getLabel(), seq.getComment(), StringUtils.rightPad(seq.getSequence(), width, '-')));
+        return retVal;
+    }
+
+    @Override
+    public String getName() {
+        return "stub";
+    }
+
+}
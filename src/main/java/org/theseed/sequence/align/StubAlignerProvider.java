@@ -0,0 +1,26 @@
+/**
+ *
+ */
+package org.theseed.sequence.align;
+
+import java.io.File;
+
+/**
+ * This is the provider for the deterministic in-JVM stub aligner.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class StubAlignerProvider implements IAlignerProvider {
+
+    @Override
+    public String getName() {
+        return "stub";
+    }
+
+    @Override
+    public MultiAligner create(File workDir) {
+        return new StubAligner();
+    }
+
+}
@@ -0,0 +1,104 @@
+/**
+ *
+ */
+package org.theseed.sequence.align;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.theseed.sequence.Sequence;
+
+/**
+ * This aligner detects sets of sequences that differ only by isolated substitutions.  If all the sequences are the
+ * same length and every difference from the first sequence is separated from the next one by a minimum distance, the
+ * input is already a valid alignment and is returned as-is.  Otherwise, the wrapped aligner is called.
+ *
+ * The spacing requirement protects against compensating indels.  Between an insertion and a nearby deletion, the
+ * sequences are shifted relative to each other, which produces a dense run of mismatches rather than isolated ones.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class UngappedAligner extends WrappingAligner {
+
+    // FIELDS
+    /** logging facility */
+    protected static Logger log = LoggerFactory.getLogger(UngappedAligner.class);
+    /** minimum distance between two mismatches */
+    private static final int MIN_SPACING = 5;
+    /** number of alignments requested */
+    private AtomicInteger requests;
+    /** number of alignments that took the fast path */
+    private AtomicInteger fastCount;
+
+    /**
+     * Construct an ungapped-fast-path aligner.
+     *
+     * @param inner		aligner to use when the fast path is not possible
+     */
+    public UngappedAligner(MultiAligner inner) {
+        super(inner);
+        this.requests = new AtomicInteger();
+        this.fastCount = new AtomicInteger();
+    }
+
+    @Override
+    public List<Sequence> align(List<Sequence> sequences) throws IOException, InterruptedException {
+        this.requests.incrementAndGet();
+        List<Sequence> retVal;
+        if (isUngapped(sequences)) {
+            this.fastCount.incrementAndGet();
+            retVal = new ArrayList<Sequence>(sequences.size());
+            for (Sequence seq : sequences)
+                retVal.add(new Sequence(seq.getLabel(), seq.getComment(), seq.getSequence()));
+        } else
+            retVal = this.getInner().align(sequences);
+        return retVal;
+    }
+
+    /**
+     * @return TRUE if the specified sequences differ only by isolated substitutions
+     *
+     * @param sequences		list of sequences to check
+     */
+    public static boolean isUngapped(List<Sequence> sequences) {
+        boolean retVal = true;
+        if (! sequences.isEmpty()) {
+            String first = sequences.get(0).getSequence();
+            final int len = first.length();
+            for (int i = 1; retVal && i < sequences.size(); i++) {
+                String other = sequences.get(i).getSequence();
+                if (other.length() != len)
+                    retVal = false;
+                else {
+                    // Insure the mismatches are isolated.
+                    int lastMismatch = -MIN_SPACING;
+                    for (int p = 0; retVal && p < len; p++) {
+                        if (Character.toUpperCase(first.charAt(p)) != Character.toUpperCase(other.charAt(p))) {
+                            if (p - lastMismatch < MIN_SPACING)
+                                retVal = false;
+                            lastMismatch = p;
+                        }
+                    }
+                }
+            }
+        }
+        return retVal;
+    }
+
+    @Override
+    protected String getPrefix() {
+        return "ungapped";
+    }
+
+    @Override
+    public void logStats() {
+        super.logStats();
+        log.info("{} of {} alignments took the ungapped fast path.", this.fastCount.get(), this.requests.get());
+    }
+
+}
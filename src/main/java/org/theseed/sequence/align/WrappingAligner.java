@@ -0,0 +1,102 @@
+/**
+ *
+ */
+package org.theseed.sequence.align;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+import org.theseed.sequence.Sequence;
+
+/**
+ * This is the base class for an aligner that wraps another aligner.  Wrapping aligners are used to add caching,
+ * shortcuts and other processing around the aligner that does the real work.  The name of a wrapping aligner
+ * includes the name of the aligner it wraps, so that the name identifies the whole configuration.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public abstract class WrappingAligner extends MultiAligner {
+
+    // FIELDS
+    /** aligner being wrapped */
+    private MultiAligner inner;
+
+    /**
+     * Construct a wrapping aligner.
+     *
+     * @param inner		aligner to wrap
+     */
+    public WrappingAligner(MultiAligner inner) {
+        this.inner = inner;
+    }
+
+    /**
+     * @return the aligner being wrapped
+     */
+    public MultiAligner getInner() {
+        return this.inner;
+    }
+
+    @Override
+    public String getName() {
+        return this.getPrefix() + "+" + this.inner.getName();
+    }
+
+    /**
+     * @return the name of the processing added by this wrapper
+     */
+    protected abstract String getPrefix();
+
+    @Override
+    public void logStats() {
+        this.inner.logStats();
+    }
+
+    /**
+     * Align a set of sequence segments using the wrapped aligner.  Unlike a normal alignment, some or all of the
+     * segments may be empty.  Empty segments become all-gap rows, and if the non-empty segments are identical or
+     * there is only one of them, the wrapped aligner is not called.
+     *
+     * @param segments		list of segments to align, with unique labels
+     *
+     * @return a list of aligned rows, in the same order as the input segments
+     *
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    protected List<String> alignSegments(List<Sequence> segments) throws IOException, InterruptedException {
+        // Isolate the non-empty segments and determine whether they are all the same.
+        List<Sequence> work = new ArrayList<Sequence>(segments.size());
+        boolean same = true;
+        for (Sequence seg : segments) {
+            if (! seg.getSequence().isEmpty()) {
+                if (! work.isEmpty() && ! work.get(0).getSequence().equals(seg.getSequence()))
+                    same = false;
+                work.add(seg);
+            }
+        }
+        // Compute the aligned rows for the non-empty segments.
+        Map<String, String> rowMap = new HashMap<String, String>(segments.size() * 4 / 3 + 1);
+        int width = 0;
+        if (! work.isEmpty()) {
+            List<Sequence> aligned = (same ? work : this.inner.align(work));
+            for (Sequence seq : aligned)
+                rowMap.put(seq.getLabel(), seq.getSequence());
+            width = aligned.get(0).getSequence().length();
+        }
+        // Assemble the output.  The empty segments are all gaps.
+        String gaps = StringUtils.repeat('-', width);
+        List<String> retVal = new ArrayList<String>(segments.size());
+        for (Sequence seg : segments) {
+            String row = (seg.getSequence().isEmpty() ? gaps : rowMap.get(seg.getLabel()));
+            retVal.add(row);
+        }
+        return retVal;
+    }
+
+}
@@ -0,0 +1,82 @@
+/**
+ *
+ */
+package org.theseed.genome.align;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.rules.TemporaryFolder;
+
+import junit.framework.TestCase;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import org.theseed.genome.Genome;
+
+/**
+ * Tests for reading GTOs from compressed files and archives.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class BundleTest extends TestCase {
+
+    /** temporary directory for the archives */
+    private TemporaryFolder tempDir;
+
+    @Override
+    protected void setUp() throws IOException {
+        this.tempDir = new TemporaryFolder();
+        this.tempDir.create();
+    }
+
+    @Override
+    protected void tearDown() {
+        this.tempDir.delete();
+    }
+
+    public void testBundle() throws IOException {
+        File zipFile = new File(this.tempDir.getRoot(), "test.zip");
+        // Build a zip containing a plain GTO and a compressed GTO.
+        try (ZipOutputStream zipStream = new ZipOutputStream(new FileOutputStream(zipFile))) {
+            zipStream.putNextEntry(new ZipEntry("wild.gto"));
+            FileUtils.copyFile(new File("data", "W3110-wild.gto"), zipStream);
+            zipStream.closeEntry();
+            zipStream.putNextEntry(new ZipEntry("mutant.gto.gz"));
+            GZIPOutputStream gzStream = new GZIPOutputStream(zipStream);
+            FileUtils.copyFile(new File("data", "W3110-30316.gto"), gzStream);
+            gzStream.finish();
+            zipStream.closeEntry();
+        }
+        List<String> ids = new ArrayList<String>();
+        try (GtoBundle bundle = new GtoBundle(Arrays.asList(zipFile, new File("data", "W3110-30317.gto")))) {
+            for (GtoSource source : bundle)
+                ids.add(source.loadPegs().getId());
+        }
+        assertThat(ids, contains("316407.117", "316407.41", "316407.118"));
+        // Load the full genome from the compressed entry.
+        Genome original = new Genome(new File("data", "W3110-30316.gto"));
+        try (GtoBundle bundle = new GtoBundle(Arrays.asList(zipFile))) {
+            GtoSource source = bundle.iterator().next();
+            Genome genome = source.load();
+            assertThat(genome.getId(), equalTo(original.getId()));
+            assertThat(genome.getPegs().size(), equalTo(original.getPegs().size()));
+            assertThat(genome.getContigs().size(), equalTo(original.getContigs().size()));
+        }
+        // A plain file with an unusual name is still a valid input.
+        File oddFile = new File(this.tempDir.getRoot(), "wild.json");
+        FileUtils.copyFile(new File("data", "W3110-wild.gto"), oddFile);
+        assertThat(GtoBundle.isValidInput(oddFile), equalTo(true));
+        assertThat(GtoBundle.isValidInput(new File(this.tempDir.getRoot(), "nosuch.gto")), equalTo(false));
+    }
+
+}
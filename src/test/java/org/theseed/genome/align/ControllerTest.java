@@ -0,0 +1,86 @@
+/**
+ *
+ */
+package org.theseed.genome.align;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Tests for the concurrency controller.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class ControllerTest extends TestCase {
+
+    public void testTargets() {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(2, 2, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
+        try (ConcurrencyController controller = new ConcurrencyController(pool, 2, 4)) {
+            // Spare capacity with waiting jobs adds a worker, up to the maximum.
+            assertThat(controller.computeTarget(2, 3, 0.50, 0.50), equalTo(3));
+            assertThat(controller.computeTarget(4, 3, 0.50, 0.50), equalTo(4));
+            // Nothing is added if no jobs are waiting or the machine is busy.
+            assertThat(controller.computeTarget(2, 0, 0.50, 0.50), equalTo(2));
+            assertThat(controller.computeTarget(3, 3, 0.85, 0.50), equalTo(3));
+            assertThat(controller.computeTarget(3, 3, 0.50, 0.15), equalTo(3));
+            // Overload or low memory removes a worker, down to the minimum.
+            assertThat(controller.computeTarget(3, 3, 0.99, 0.50), equalTo(2));
+            assertThat(controller.computeTarget(3, 3, 0.50, 0.05), equalTo(2));
+            assertThat(controller.computeTarget(2, 3, 0.99, 0.05), equalTo(2));
+            // Unknown values are ignored, but at least one must be known to add a worker.
+            assertThat(controller.computeTarget(2, 3, -1.0, 0.50), equalTo(3));
+            assertThat(controller.computeTarget(2, 3, 0.50, -1.0), equalTo(3));
+            assertThat(controller.computeTarget(3, 3, -1.0, 0.05), equalTo(2));
+            assertThat(controller.computeTarget(2, 3, -1.0, -1.0), equalTo(2));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    public void testAdjust() throws InterruptedException {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(2, 2, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
+        CountDownLatch latch = new CountDownLatch(1);
+        try (ConcurrencyController controller = new ConcurrencyController(pool, 2, 4)) {
+            // Fill the pool so that jobs are waiting.
+            for (int i = 0; i < 6; i++) {
+                pool.execute(() -> {
+                    try {
+                        latch.await();
+                    } catch (InterruptedException e) { }
+                });
+            }
+            controller.adjust(0.10, 0.50);
+            assertThat(pool.getCorePoolSize(), equalTo(3));
+            assertThat(pool.getMaximumPoolSize(), equalTo(3));
+            // The CPU load is ignored until the cool-down is over.
+            for (int i = 0; i < ConcurrencyController.COOL_DOWN; i++) {
+                controller.adjust(0.10, 0.50);
+                assertThat(pool.getCorePoolSize(), equalTo(3));
+            }
+            controller.adjust(0.10, 0.50);
+            assertThat(pool.getCorePoolSize(), equalTo(4));
+            controller.adjust(0.99, 0.50);
+            assertThat(pool.getCorePoolSize(), equalTo(4));
+            // A memory shortage acts even during the cool-down.
+            controller.adjust(0.10, 0.05);
+            controller.adjust(0.10, 0.05);
+            assertThat(pool.getCorePoolSize(), equalTo(2));
+            assertThat(pool.getMaximumPoolSize(), equalTo(2));
+            assertThat(controller.getAdjustments(), equalTo(4));
+            double mean = controller.getMeanWorkers();
+            assertThat(mean, greaterThanOrEqualTo(2.0));
+            assertThat(mean, lessThanOrEqualTo(4.0));
+        } finally {
+            latch.countDown();
+            pool.shutdownNow();
+        }
+    }
+
+}
@@ -0,0 +1,96 @@
+/**
+ *
+ */
+package org.theseed.genome.align;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import org.theseed.genome.Feature;
+import org.theseed.genome.Genome;
+import org.theseed.proteins.Function;
+import org.theseed.proteins.FunctionMap;
+
+/**
+ * Tests for the snip-change count command.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class DiffTest extends TestCase {
+
+    /**
+     * Verify that the streaming diff command produces the same output as the original full-genome comparison.
+     *
+     * @throws IOException
+     */
+    public void testDiff() throws IOException {
+        File baseFile = new File("data", "W3110-30316.gto");
+        String[] testNames = new String[] { "W3110-30317.gto", "W3110-30318.gto", "W3110-wild.gto" };
+        List<String> args = new ArrayList<String>();
+        args.add(baseFile.toString());
+        for (String testName : testNames)
+            args.add(new File("data", testName).toString());
+        // Run the command and capture its output.
+        ByteArrayOutputStream outBytes = new ByteArrayOutputStream();
+        PrintStream oldOut = System.out;
+        System.setOut(new PrintStream(outBytes, true));
+        try {
+            DiffProcessor processor = new DiffProcessor();
+            assertThat(processor.parseCommand(args.toArray(new String[args.size()])), equalTo(true));
+            processor.run();
+        } finally {
+            System.setOut(oldOut);
+        }
+        String[] lines = new String(outBytes.toByteArray(), StandardCharsets.UTF_8).split("\\r?\\n");
+        assertThat(lines.length, equalTo(testNames.length + 1));
+        assertThat(lines[0], equalTo("genome_id\tgenome_name\tchanges"));
+        for (int i = 0; i < testNames.length; i++)
+            assertThat(testNames[i], lines[i + 1], equalTo(this.oldDiff(baseFile, new File("data", testNames[i]))));
+    }
+
+    /**
+     * @return the output line for a test genome, computed in the original way from full Genome objects
+     *
+     * @param baseFile		base genome file
+     * @param testFile		test genome file
+     *
+     * @throws IOException
+     */
+    private String oldDiff(File baseFile, File testFile) throws IOException {
+        Genome baseGenome = new Genome(baseFile);
+        FunctionMap funMap = new FunctionMap();
+        Map<String, List<Feature>> featureMap = new HashMap<String, List<Feature>>();
+        for (Feature feat : baseGenome.getPegs()) {
+            String pegFunction = feat.getPegFunction();
+            if (! Feature.isHypothetical(pegFunction) && feat.getProteinTranslation() != null) {
+                Function fun = funMap.findOrInsert(pegFunction);
+                featureMap.computeIfAbsent(fun.getId(), x -> new ArrayList<Feature>()).add(feat);
+            }
+        }
+        Genome genome = new Genome(testFile);
+        int changes = 0;
+        for (Feature feat : genome.getPegs()) {
+            Function fun = funMap.getByName(feat.getPegFunction());
+            if (fun != null) {
+                String protein = feat.getProteinTranslation();
+                boolean changed = (protein == null || featureMap.get(fun.getId()).stream().noneMatch(x ->
+                        x.getProteinTranslation().endsWith(protein) || protein.endsWith(x.getProteinTranslation())));
+                if (changed) changes++;
+            }
+        }
+        return String.format("%s\t%s\t%d", genome.getId(), genome.getName(), changes);
+    }
+
+}
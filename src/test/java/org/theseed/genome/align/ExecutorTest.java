@@ -0,0 +1,158 @@
+/**
+ *
+ */
+package org.theseed.genome.align;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import org.apache.commons.lang3.StringUtils;
+import org.theseed.sequence.Sequence;
+import org.theseed.sequence.align.MultiAligner;
+
+/**
+ * Tests for the alignment executor.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class ExecutorTest extends TestCase {
+
+    /**
+     * This is a stub aligner whose latency is controlled by the comment of the first sequence.  The comment is
+     * a delay in milliseconds, or "fail" to throw an exception.  The sequences are returned unchanged, and the
+     * order in which the jobs start and finish is recorded.
+     */
+    private static class DelayAligner extends MultiAligner {
+
+        /** labels of the jobs in the order they started */
+        private List<String> started = Collections.synchronizedList(new ArrayList<String>());
+        /** number of jobs that ran to completion */
+        private AtomicInteger finished = new AtomicInteger();
+
+        @Override
+        public List<Sequence> align(List<Sequence> sequences) throws IOException, InterruptedException {
+            Sequence first = sequences.get(0);
+            this.started.add(first.getLabel());
+            if (first.getComment().equals("fail")) {
+                Thread.sleep(50);
+                throw new IOException("Alignment failed for " + first.getLabel() + ".");
+            }
+            Thread.sleep(Integer.parseInt(first.getComment()));
+            this.finished.incrementAndGet();
+            return sequences;
+        }
+
+        @Override
+        public String getName() {
+            return "delay";
+        }
+
+    }
+
+    /**
+     * @return a one-sequence alignment job
+     *
+     * @param label		label of the job
+     * @param delay		delay in milliseconds, or "fail"
+     * @param len		length of the sequence, which determines the estimated cost
+     */
+    private static List<Sequence> job(String label, String delay, int len) {
+        return Arrays.asList(new Sequence(label, delay, StringUtils.repeat('a', len)));
+    }
+
+    public void testDeliveryOrder() throws Exception {
+        DelayAligner aligner = new DelayAligner();
+        List<String> delivered = new ArrayList<String>();
+        List<String> alignments = new ArrayList<String>();
+        try (AlignmentExecutor<String> executor = new AlignmentExecutor<String>(1, 20, aligner, (key, alignment, fallback) -> {
+            delivered.add(key);
+            alignments.add(alignment == null ? "" : alignment.get(0).getLabel());
+        })) {
+            // The first job occupies the worker, so the others are queued and dispatched by cost.
+            executor.submit("k1", job("j1", "200", 10));
+            executor.submit("k2", job("j2", "5", 10));
+            executor.skip("k3");
+            executor.submit("k4", job("j4", "80", 1000));
+            executor.submitResult("k5", job("r5", "0", 5));
+            executor.submit("k6", job("j6", "1", 500));
+            executor.skip("k7");
+            executor.submit("k8", job("j8", "30", 100));
+            executor.drain();
+            assertThat(executor.getAlignCount(), equalTo(5));
+        }
+        assertThat(delivered, contains("k1", "k2", "k3", "k4", "k5", "k6", "k7", "k8"));
+        assertThat(alignments, contains("j1", "j2", "", "j4", "r5", "j6", "", "j8"));
+        assertThat(aligner.started, contains("j1", "j4", "j6", "j8", "j2"));
+    }
+
+    public void testParallelOrder() throws Exception {
+        DelayAligner aligner = new DelayAligner();
+        List<String> delivered = new ArrayList<String>();
+        try (AlignmentExecutor<String> executor = new AlignmentExecutor<String>(4, 3, aligner,
+                (key, alignment, fallback) -> delivered.add(key))) {
+            // Later jobs finish before earlier ones, and the lookahead forces deliveries during submission.
+            for (int i = 0; i < 12; i++)
+                executor.submit("k" + i, job("j" + i, Integer.toString(60 - 5 * i), 10 + i));
+            executor.drain();
+        }
+        assertThat(delivered.size(), equalTo(12));
+        for (int i = 0; i < 12; i++)
+            assertThat(delivered.get(i), equalTo("k" + i));
+    }
+
+    public void testFailure() throws Exception {
+        DelayAligner aligner = new DelayAligner();
+        List<String> delivered = new ArrayList<String>();
+        long start = System.currentTimeMillis();
+        try (AlignmentExecutor<String> executor = new AlignmentExecutor<String>(2, 20, aligner,
+                (key, alignment, fallback) -> delivered.add(key))) {
+            executor.submit("k1", job("j1", "fail", 10));
+            executor.submit("k2", job("j2", "10000", 10));
+            executor.submit("k3", job("j3", "10000", 10));
+            executor.submit("k4", job("j4", "10000", 10));
+            try {
+                executor.drain();
+                fail("Alignment failure not rethrown.");
+            } catch (IOException e) {
+                assertThat(e.getMessage(), containsString("j1"));
+            }
+            try {
+                executor.skip("k5");
+                fail("Submission allowed after a failure.");
+            } catch (IllegalStateException e) { }
+        }
+        // The remaining jobs must have been cancelled rather than run out.
+        assertThat(System.currentTimeMillis() - start, lessThan(5000L));
+        assertThat(delivered, empty());
+        assertThat(aligner.finished.get(), equalTo(0));
+    }
+
+    public void testUnwind() throws Exception {
+        DelayAligner aligner = new DelayAligner();
+        List<String> delivered = new ArrayList<String>();
+        long start = System.currentTimeMillis();
+        try (AlignmentExecutor<String> executor = new AlignmentExecutor<String>(2, 20, aligner,
+                (key, alignment, fallback) -> delivered.add(key))) {
+            executor.submit("k1", job("j1", "10000", 10));
+            executor.skip("k2");
+            executor.submit("k3", job("j3", "10000", 10));
+            throw new IllegalArgumentException("Client failure.");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), equalTo("Client failure."));
+        }
+        // Closing during the unwind must not wait for the jobs or call the consumer.
+        assertThat(System.currentTimeMillis() - start, lessThan(5000L));
+        assertThat(delivered, empty());
+        assertThat(aligner.finished.get(), equalTo(0));
+    }
+
+}
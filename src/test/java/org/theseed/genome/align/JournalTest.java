@@ -0,0 +1,67 @@
+/**
+ *
+ */
+package org.theseed.genome.align;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.rules.TemporaryFolder;
+
+import junit.framework.TestCase;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import org.theseed.sequence.Sequence;
+
+/**
+ * Tests for the alignment journal.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class JournalTest extends TestCase {
+
+    /** temporary directory for the journal files */
+    private TemporaryFolder tempDir;
+
+    @Override
+    protected void setUp() throws IOException {
+        this.tempDir = new TemporaryFolder();
+        this.tempDir.create();
+    }
+
+    @Override
+    protected void tearDown() {
+        this.tempDir.delete();
+    }
+
+    public void testJournal() throws IOException {
+        File journalFile = new File(this.tempDir.getRoot(), "test.journal");
+        try (AlignmentJournal journal = new AlignmentJournal(journalFile, false)) {
+            journal.write("fig|1.1.peg.1", "k1", Arrays.asList(new Sequence("a", "loc1", "ac-gt")));
+            journal.write("fig|1.1.peg.2", "k2", Arrays.asList(new Sequence("b", "", "acggt"), new Sequence("c", "loc3", "ac-gt")));
+        }
+        // Simulate a crash in the middle of a record.
+        try (FileWriter writer = new FileWriter(journalFile, true)) {
+            writer.write("#fig|1.1.peg.3\tk3\t2\nd\t\tacgt\n");
+        }
+        try (AlignmentJournal journal = new AlignmentJournal(journalFile, true)) {
+            List<Sequence> alignment = journal.get("fig|1.1.peg.2", "k2");
+            assertThat(alignment.size(), equalTo(2));
+            assertThat(alignment.get(1).getComment(), equalTo("loc3"));
+            assertThat(alignment.get(1).getSequence(), equalTo("ac-gt"));
+            assertThat(journal.get("fig|1.1.peg.1", "k2"), nullValue());
+            assertThat(journal.get("fig|1.1.peg.3", "k3"), nullValue());
+            journal.write("fig|1.1.peg.3", "k3", Arrays.asList(new Sequence("d", "", "acgt")));
+        }
+        try (AlignmentJournal journal = new AlignmentJournal(journalFile, true)) {
+            assertThat(journal.get("fig|1.1.peg.1", "k1").get(0).getSequence(), equalTo("ac-gt"));
+            assertThat(journal.get("fig|1.1.peg.3", "k3").get(0).getLabel(), equalTo("d"));
+        }
+    }
+
+}
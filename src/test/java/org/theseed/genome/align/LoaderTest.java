@@ -0,0 +1,39 @@
+/**
+ *
+ */
+package org.theseed.genome.align;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import org.theseed.genome.Genome;
+
+/**
+ * Tests for the parallel genome loader.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class LoaderTest extends TestCase {
+
+    public void testLoadOrder() throws IOException {
+        List<File> files = GenomeLoader.listDirectory(new File("data"));
+        assertThat(files.size(), equalTo(4));
+        // The genomes must come back in file order, whichever loader thread finishes first.
+        List<String> ids = new ArrayList<String>();
+        try (GtoBundle bundle = new GtoBundle(Collections.singletonList(new File("data")));
+                GenomeLoader genomes = new GenomeLoader(bundle, 3)) {
+            for (Genome genome : genomes)
+                ids.add(genome.getId());
+        }
+        assertThat(ids, contains("316407.117", "316407.118", "316407.119", "316407.41"));
+    }
+
+}
@@ -0,0 +1,59 @@
+/**
+ *
+ */
+package org.theseed.genome.align;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.rules.TemporaryFolder;
+
+import junit.framework.TestCase;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Tests for the genome directory manifest.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class ManifestTest extends TestCase {
+
+    /** temporary genome directory */
+    private TemporaryFolder tempDir;
+
+    @Override
+    protected void setUp() throws IOException {
+        this.tempDir = new TemporaryFolder();
+        this.tempDir.create();
+    }
+
+    @Override
+    protected void tearDown() {
+        this.tempDir.delete();
+    }
+
+    public void testManifest() throws IOException {
+        File genomeDir = this.tempDir.getRoot();
+        FileUtils.copyFileToDirectory(new File("data", "W3110-30316.gto"), genomeDir);
+        FileUtils.copyFileToDirectory(new File("data", "W3110-wild.gto"), genomeDir);
+        File manifestFile = new File(genomeDir, GenomeManifest.MANIFEST_NAME);
+        GenomeManifest manifest = new GenomeManifest(genomeDir);
+        assertThat(manifest.size(), equalTo(2));
+        assertThat(manifest.getScanCount(), equalTo(2));
+        assertThat(manifestFile.canRead(), equalTo(true));
+        GenomeManifest.Entry entry = manifest.getGenome("316407.117");
+        assertThat(entry.getFile().getName(), equalTo("W3110-30316.gto"));
+        assertThat(entry.getPegCount(), equalTo(4582));
+        assertThat(entry.getSize(), equalTo(entry.getFile().length()));
+        assertThat(manifest.getGenome("83333.1"), nullValue());
+        // A second open should not need to scan anything.
+        manifest = new GenomeManifest(genomeDir);
+        assertThat(manifest.size(), equalTo(2));
+        assertThat(manifest.getScanCount(), equalTo(0));
+        assertThat(manifest.getGenome("316407.117").getChecksum(), equalTo(entry.getChecksum()));
+    }
+
+}
@@ -0,0 +1,58 @@
+/**
+ *
+ */
+package org.theseed.genome.align;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import junit.framework.TestCase;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Tests for the streaming GTO peg reader.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class PegReaderTest extends TestCase {
+
+    public void testPegReader() throws IOException {
+        GtoPegReader genome = new GtoPegReader(new File("data", "W3110-30316.gto"));
+        assertThat(genome.getId(), equalTo("316407.117"));
+        List<GtoPegReader.Peg> pegs = genome.getPegs();
+        assertThat(pegs.size(), equalTo(4582));
+        GtoPegReader.Peg peg = pegs.get(0);
+        assertThat(peg.getId(), equalTo("fig|316407.117.peg.1"));
+        assertThat(peg.getFunction(), equalTo("Phage integrase"));
+        assertThat(peg.getStrand(), equalTo('+'));
+        assertThat(peg.getLeft(), equalTo(91));
+        assertThat(peg.getRight(), equalTo(1287));
+        peg = pegs.get(1);
+        assertThat(peg.getStrand(), equalTo('-'));
+        assertThat(peg.getLeft(), equalTo(1475));
+        assertThat(peg.getRight(), equalTo(2494));
+        assertThat(peg.getProtein(), not(emptyOrNullString()));
+    }
+
+    public void testNoLocation() throws IOException {
+        String gto = "{\"id\": \"1.1\", \"scientific_name\": \"Test genome\", \"features\": ["
+                + "{\"id\": \"fig|1.1.peg.1\", \"type\": \"CDS\", \"location\": [[\"c1\", 100, \"-\", 30]]},"
+                + "{\"id\": \"fig|1.1.peg.2\", \"type\": \"CDS\", \"location\": []},"
+                + "{\"id\": \"fig|1.1.peg.3\", \"type\": \"CDS\", \"function\": \"none\"}]}";
+        GtoPegReader genome = new GtoPegReader(new ByteArrayInputStream(gto.getBytes(StandardCharsets.UTF_8)));
+        assertThat(genome.getName(), equalTo("Test genome"));
+        List<GtoPegReader.Peg> pegs = genome.getPegs();
+        assertThat(pegs.size(), equalTo(1));
+        GtoPegReader.Peg peg = pegs.get(0);
+        assertThat(peg.getId(), equalTo("fig|1.1.peg.1"));
+        assertThat(peg.getPegFunction(), equalTo("hypothetical protein"));
+        assertThat(peg.getLeft(), equalTo(71));
+        assertThat(peg.getRight(), equalTo(100));
+    }
+
+}
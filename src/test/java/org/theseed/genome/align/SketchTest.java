@@ -0,0 +1,138 @@
+/**
+ *
+ */
+package org.theseed.genome.align;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import org.theseed.genome.Genome;
+import org.theseed.proteins.Function;
+import org.theseed.proteins.FunctionMap;
+import org.theseed.sequence.DnaKmers;
+import org.theseed.sequence.ExtendedProteinRegion;
+import org.theseed.sequence.PackedContigStore;
+import org.theseed.sequence.RegionList;
+
+/**
+ * Tests for the MinHash region sketches.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class SketchTest extends TestCase {
+
+    public void testSketches() {
+        RegionSketchIndex index = new RegionSketchIndex(Collections.emptyMap(), 256, 0.001);
+        double bound = index.getErrorBound(1);
+        assertThat(bound, closeTo(0.1218, 0.0001));
+        // The failure probability is divided among the members of a family.
+        assertThat(index.getErrorBound(10), closeTo(0.1391, 0.0001));
+        Random rand = new Random(12345);
+        String dna1 = randomDna(rand, 2000);
+        String dna2 = randomDna(rand, 2000);
+        // Mutate one base in every 40 of the first sequence.
+        char[] mutant = dna1.toCharArray();
+        for (int i = 0; i < mutant.length; i += 40)
+            mutant[i] = (mutant[i] == 'a' ? 'c' : 'a');
+        String dna3 = new String(mutant);
+        long[] s1 = index.sketch(dna1);
+        assertThat(s1.length, equalTo(256));
+        assertThat(index.estimate(s1, index.sketch(dna1.toUpperCase())), equalTo(0.0));
+        assertThat(index.estimate(s1, index.sketch(PackedContigStore.reverseComplement(dna1))), equalTo(0.0));
+        assertThat(index.estimate(s1, index.sketch(dna2)), greaterThan(1.0 - bound));
+        assertThat(index.estimate(s1, index.sketch(dna3)), closeTo(exactDistance(dna1, dna3), bound));
+        // A sequence shorter than a kmer has an empty sketch.
+        assertThat(index.sketch("acg").length, equalTo(0));
+        assertThat(index.estimate(s1, index.sketch("acg")), equalTo(1.0));
+    }
+
+    public void testFamilies() throws IOException {
+        final double maxDist = 0.6;
+        Genome base = new Genome(new File("data", "W3110-wild.gto"));
+        FunctionMap funMap = new FunctionMap();
+        Map<String, RegionList> baseMap = RegionList.createMap(funMap, base, 100);
+        RegionSketchIndex sketches = new RegionSketchIndex(baseMap, 256, RegionSketchIndex.DEFAULT_FAILURE);
+        // Every search in a sketched family must agree with the full search.
+        int sketchedCount = 0;
+        int foundCount = 0;
+        Genome genome = new Genome(new File("data", "W3110-30316.gto"));
+        ExtendedProteinRegion.GenomeIterator iter = new ExtendedProteinRegion.GenomeIterator(genome, 100);
+        while (iter.hasNext()) {
+            ExtendedProteinRegion region = iter.next();
+            Function fun = funMap.getByName(region.getFeature().getFunction());
+            if (fun != null) {
+                RegionList regions = baseMap.get(fun.getId());
+                if (regions.size() > RegionSketchIndex.SMALL_FAMILY && regions.size() <= 50) {
+                    sketchedCount++;
+                    ExtendedProteinRegion expected = regions.getClosest(region, maxDist);
+                    ExtendedProteinRegion closest = sketches.getClosest(fun.getId(), region, maxDist);
+                    if (expected == null)
+                        assertThat(region.getFeature().getId(), closest, nullValue());
+                    else {
+                        foundCount++;
+                        assertThat(region.getFeature().getId(), closest, notNullValue());
+                        assertThat(region.getFeature().getId(), closest.getFeature().getId(),
+                                equalTo(expected.getFeature().getId()));
+                    }
+                }
+            }
+        }
+        assertThat(sketchedCount, greaterThan(0));
+        assertThat(foundCount, greaterThan(0));
+    }
+
+    /**
+     * @return a random lower-case DNA sequence
+     *
+     * @param rand		randomizer to use
+     * @param len		length of the sequence
+     */
+    private static String randomDna(Random rand, int len) {
+        StringBuilder retVal = new StringBuilder(len);
+        for (int i = 0; i < len; i++)
+            retVal.append("acgt".charAt(rand.nextInt(4)));
+        return retVal.toString();
+    }
+
+    /**
+     * @return the exact Jaccard distance between the canonical kmer sets of two sequences
+     *
+     * @param dna1		first sequence
+     * @param dna2		second sequence
+     */
+    private static double exactDistance(String dna1, String dna2) {
+        Set<String> k1 = canonicalKmers(dna1);
+        Set<String> k2 = canonicalKmers(dna2);
+        Set<String> union = new HashSet<String>(k1);
+        union.addAll(k2);
+        k1.retainAll(k2);
+        return 1.0 - ((double) k1.size()) / union.size();
+    }
+
+    /**
+     * @return the set of canonical kmers in a sequence
+     *
+     * @param dna		sequence to process
+     */
+    private static Set<String> canonicalKmers(String dna) {
+        final int k = DnaKmers.kmerSize();
+        Set<String> retVal = new HashSet<String>();
+        for (int i = 0; i + k <= dna.length(); i++) {
+            String kmer = dna.substring(i, i + k);
+            String rev = PackedContigStore.reverseComplement(kmer);
+            retVal.add(kmer.compareTo(rev) <= 0 ? kmer : rev);
+        }
+        return retVal;
+    }
+
+}
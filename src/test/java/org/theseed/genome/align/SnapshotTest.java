@@ -0,0 +1,67 @@
+/**
+ *
+ */
+package org.theseed.genome.align;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.rules.TemporaryFolder;
+
+import junit.framework.TestCase;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import org.theseed.genome.Genome;
+
+/**
+ * Tests for genome snapshots.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class SnapshotTest extends TestCase {
+
+    /** temporary directory for the snapshot files */
+    private TemporaryFolder tempDir;
+
+    @Override
+    protected void setUp() throws IOException {
+        this.tempDir = new TemporaryFolder();
+        this.tempDir.create();
+    }
+
+    @Override
+    protected void tearDown() {
+        this.tempDir.delete();
+    }
+
+    public void testSnapshot() throws IOException {
+        File gtoFile = new File("data", "W3110-wild.gto");
+        File snapFile = new File(this.tempDir.getRoot(), "test.snap");
+        GenomeSnapshot.save(new Genome(gtoFile), snapFile);
+        assertThat(GenomeSnapshot.isSnapshot(snapFile), equalTo(true));
+        assertThat(GenomeSnapshot.isSnapshot(gtoFile), equalTo(false));
+        IPegGenome snapshot = IPegGenome.load(snapFile);
+        IPegGenome original = IPegGenome.load(gtoFile);
+        assertThat(snapshot.getId(), equalTo(original.getId()));
+        assertThat(snapshot.getName(), equalTo(original.getName()));
+        List<GtoPegReader.Peg> pegs = snapshot.getPegs();
+        List<GtoPegReader.Peg> oldPegs = original.getPegs();
+        assertThat(pegs.size(), equalTo(oldPegs.size()));
+        for (int i = 0; i < pegs.size(); i++) {
+            GtoPegReader.Peg peg = pegs.get(i);
+            GtoPegReader.Peg oldPeg = oldPegs.get(i);
+            assertThat(peg.getId(), equalTo(oldPeg.getId()));
+            assertThat(peg.getProtein(), equalTo(oldPeg.getProtein()));
+            assertThat(peg.getContigId(), equalTo(oldPeg.getContigId()));
+            assertThat(peg.getLeft(), equalTo(oldPeg.getLeft()));
+            assertThat(peg.getRight(), equalTo(oldPeg.getRight()));
+        }
+        assertThat(ConvertProcessor.snapName("data" + File.separator + "W3110-wild.gto"), equalTo("W3110-wild.snap"));
+        assertThat(ConvertProcessor.snapName("genomes.zip:gtos/83333.1.gto.gz"), equalTo("83333.1.snap"));
+        assertThat(ConvertProcessor.snapName("genomes.tar.gz:83333.1.gto"), equalTo("83333.1.snap"));
+    }
+
+}
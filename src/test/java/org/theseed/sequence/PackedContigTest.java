@@ -0,0 +1,53 @@
+/**
+ *
+ */
+package org.theseed.sequence;
+
+import junit.framework.TestCase;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import org.theseed.locations.Location;
+
+/**
+ * Tests for the packed contig store.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class PackedContigTest extends TestCase {
+
+    public void testPackedContigs() {
+        PackedContigStore contigs = new PackedContigStore();
+        contigs.add("c1", "ACGTNacgtrYkm");
+        contigs.add("c2", "gattaca");
+        assertThat(contigs.size(), equalTo(2));
+        assertThat(contigs.getLength("c1"), equalTo(13));
+        assertThat(contigs.getLength("c3"), equalTo(-1));
+        assertThat(contigs.getDna("c1", 1, 13), equalTo("acgtnacgtrykm"));
+        assertThat(contigs.getDna("c1", 4, 6), equalTo("tna"));
+        assertThat(contigs.getDna("c1", 11, 20), equalTo("ykm"));
+        assertThat(contigs.getDna("c2", -2, 3), equalTo("gat"));
+        assertThat(contigs.getDna("c3", 1, 3), equalTo(""));
+        assertThat(contigs.getDna(Location.create("c2", 1, 4)), equalTo("gatt"));
+        assertThat(contigs.getDna(Location.create("c2", 7, 4)), equalTo("tgta"));
+        assertThat(contigs.getDna(Location.create("c1", 13, 9)), equalTo("kmrya"));
+        assertThat(PackedContigStore.reverseComplement("acgtn"), equalTo("nacgt"));
+    }
+
+    /**
+     * Test slices that cross the boundaries between packed bytes.
+     */
+    public void testByteBoundaries() {
+        PackedContigStore contigs = new PackedContigStore();
+        contigs.add("c1", "ttgcAAGCyTTa");
+        assertThat(contigs.getLength("c1"), equalTo(12));
+        assertThat(contigs.getDna("c1", 1, 12), equalTo("ttgcaagcytta"));
+        assertThat(contigs.getDna("c1", 3, 6), equalTo("gcaa"));
+        assertThat(contigs.getDna("c1", 4, 9), equalTo("caagcy"));
+        assertThat(contigs.getDna(Location.create("c1", 8, 3)), equalTo("gcttgc"));
+        assertThat(contigs.getDna(Location.create("c1", 10, 7)), equalTo("argc"));
+        assertThat(contigs.getDna(Location.create("c1", 12, 1)), equalTo("taargcttgcaa"));
+    }
+
+}
@@ -0,0 +1,507 @@
+/**
+ *
+ */
+package org.theseed.sequence.align;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.rules.TemporaryFolder;
+
+import junit.framework.TestCase;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import org.theseed.basic.ParseFailureException;
+import org.theseed.genome.Genome;
+import org.theseed.sequence.ExtendedProteinRegion;
+import org.theseed.sequence.MarkedRegionList;
+import org.theseed.sequence.RegionList;
+import org.theseed.sequence.Sequence;
+import org.theseed.sequence.clustal.SnipColumn;
+import org.theseed.sequence.clustal.SnipIterator;
+
+/**
+ * Tests for the multiple-sequence aligners.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class AlignerTest extends TestCase {
+
+    /** genome files and feature IDs for the test regions; the first is the base */
+    private static final String[][] TEST_FEATURES = new String[][] {
+        { "W3110-wild.gto", "fig|316407.41.peg.703" },
+        { "W3110-30318.gto", "fig|316407.119.peg.3360" },
+        { "W3110-30317.gto", "fig|316407.118.peg.3302" },
+        { "W3110-30316.gto", "fig|316407.117.peg.3328" }
+    };
+
+    /** number of test features that are close variants of the base */
+    private static final int CLOSE_FEATURES = 3;
+
+    /**
+     * @return a region list for the test features
+     *
+     * @param genomeIds		list to be filled with the genome IDs, in order
+     * @param count			number of test features to use
+     *
+     * @throws IOException
+     */
+    private static MarkedRegionList loadRegions(List<String> genomeIds, int count) throws IOException {
+        MarkedRegionList retVal = new MarkedRegionList();
+        for (int i = 0; i < count; i++) {
+            String[] spec = TEST_FEATURES[i];
+            Genome genome = new Genome(new File("data", spec[0]));
+            RegionList regions = new RegionList(genome, 100);
+            retVal.add(regions.get(spec[1]));
+            genomeIds.add(genome.getId());
+        }
+        return retVal;
+    }
+
+    /**
+     * @return a list of snip strings for an alignment
+     *
+     * @param regions		regions that were aligned
+     * @param alignment		alignment to analyze
+     * @param genomeIds		list of genome IDs, with the base first
+     */
+    private static List<String> snips(RegionList regions, List<Sequence> alignment, List<String> genomeIds) {
+        Set<String> wildSet = new TreeSet<String>();
+        wildSet.add(genomeIds.get(0));
+        List<String> retVal = new ArrayList<String>();
+        SnipIterator.Run snipRun = new SnipIterator.Run(regions, alignment, wildSet, genomeIds);
+        for (SnipColumn snipCol : snipRun) {
+            for (int i = 0; i < snipCol.getRows(); i++)
+                retVal.add(snipCol.getFid(i) + ":" + snipCol.getSnip(i));
+        }
+        return retVal;
+    }
+
+    /**
+     * Verify that the rows of an alignment are consistent with the input.
+     *
+     * @param input			input sequences
+     * @param alignment		aligned sequences
+     */
+    private static void checkAlignment(List<Sequence> input, List<Sequence> alignment) {
+        assertThat(alignment.size(), equalTo(input.size()));
+        int width = alignment.get(0).getSequence().length();
+        for (int i = 0; i < input.size(); i++) {
+            Sequence seq = alignment.get(i);
+            Sequence original = input.get(i);
+            assertThat(seq.getLabel(), equalTo(original.getLabel()));
+            assertThat(seq.getComment(), equalTo(original.getComment()));
+            assertThat(seq.getSequence().length(), equalTo(width));
+            assertThat(seq.getSequence().replace("-", ""), equalTo(original.getSequence()));
+        }
+    }
+
+    /**
+     * @return the aligned rows of an alignment
+     *
+     * @param alignment		alignment to process
+     */
+    private static List<String> rows(List<Sequence> alignment) {
+        return alignment.stream().map(x -> x.getSequence()).collect(Collectors.toList());
+    }
+
+    /**
+     * Verify that an aligner produces a valid alignment of the close test regions with the same snips as the
+     * Java progressive aligner.
+     *
+     * @param aligner		aligner to test
+     *
+     * @return the alignment produced
+     *
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    private static List<Sequence> checkSnips(MultiAligner aligner) throws IOException, InterruptedException {
+        List<String> genomeIds = new ArrayList<String>();
+        MarkedRegionList regions = loadRegions(genomeIds, CLOSE_FEATURES);
+        List<Sequence> input = regions.toSequences();
+        List<Sequence> retVal = aligner.align(input);
+        checkAlignment(input, retVal);
+        List<Sequence> javaAlignment = new JavaAligner().align(input);
+        assertThat(snips(regions, retVal, genomeIds), equalTo(snips(regions, javaAlignment, genomeIds)));
+        return retVal;
+    }
+
+    /**
+     * @return a function that returns the upstream length for each close test region
+     *
+     * @throws IOException
+     */
+    private static Map<String, Integer> upstreamLengths() throws IOException {
+        MarkedRegionList regions = loadRegions(new ArrayList<String>(), CLOSE_FEATURES);
+        Map<String, Integer> retVal = new HashMap<String, Integer>();
+        for (ExtendedProteinRegion region : regions)
+            retVal.put(region.getLabel(), region.getUpstreamDistance());
+        return retVal;
+    }
+
+    /**
+     * This is an aligner that always fails, for testing failure handling.
+     */
+    private static class FailingAligner extends MultiAligner {
+
+        /** number of calls */
+        private int calls = 0;
+
+        @Override
+        public List<Sequence> align(List<Sequence> sequences) throws IOException {
+            this.calls++;
+            throw new IOException("Simulated aligner failure.");
+        }
+
+        @Override
+        public String getName() {
+            return "failing";
+        }
+
+    }
+
+    /**
+     * @return TRUE if the Clustal program is on the path
+     */
+    private static boolean clustalInstalled() {
+        boolean retVal = false;
+        String path = System.getenv("PATH");
+        if (path != null) {
+            for (String dir : path.split(File.pathSeparator)) {
+                if (! dir.isEmpty() && (new File(dir, "clustalo").canExecute()
+                        || new File(dir, "clustalo.exe").canExecute()))
+                    retVal = true;
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * Compare the Java aligner's snips to Clustal's.  The two aligners may place a gap differently in an
+     * ambiguous stretch, so we only require them to agree on the variant features and on most of the snips.
+     * The test is skipped if Clustal is not installed.
+     *
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public void testJavaAligner() throws IOException, InterruptedException {
+        List<String> genomeIds = new ArrayList<String>();
+        MarkedRegionList regions = loadRegions(genomeIds, TEST_FEATURES.length);
+        List<Sequence> input = regions.toSequences();
+        List<Sequence> javaAlignment = new JavaAligner().align(input);
+        checkAlignment(input, javaAlignment);
+        if (! clustalInstalled())
+            System.err.println("Clustal not installed:  Java aligner comparison skipped.");
+        else {
+            List<Sequence> clustalAlignment = new ClustalAligner(new File("data")).align(input);
+            checkAlignment(input, clustalAlignment);
+            Set<String> javaSnips = new TreeSet<String>(snips(regions, javaAlignment, genomeIds));
+            Set<String> clustalSnips = new TreeSet<String>(snips(regions, clustalAlignment, genomeIds));
+            assertThat(snipFids(javaSnips), equalTo(snipFids(clustalSnips)));
+            Set<String> common = new TreeSet<String>(javaSnips);
+            common.retainAll(clustalSnips);
+            int total = Math.max(javaSnips.size(), clustalSnips.size());
+            assertThat(common.size() * 10, greaterThanOrEqualTo(total * 9));
+        }
+    }
+
+    /**
+     * @return the set of feature IDs with snips in a set of snip strings
+     *
+     * @param snips		set of snip strings to process
+     */
+    private static Set<String> snipFids(Set<String> snips) {
+        return snips.stream().map(x -> StringUtils.substringBeforeLast(x, ":"))
+                .collect(Collectors.toCollection(TreeSet::new));
+    }
+
+    /**
+     * Test collapsing of identical sequences.
+     *
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public void testCollapse() throws IOException, InterruptedException {
+        List<Sequence> input = new ArrayList<Sequence>();
+        input.add(new Sequence("a", "ca", "aaacccgggtttacgtacgt"));
+        input.add(new Sequence("b", "cb", "aaacccgggtacgtacgt"));
+        input.add(new Sequence("c", "cc", "aaacccgggtttacgtacgt"));
+        input.add(new Sequence("d", "cd", "aaacccgggtacgtacgt"));
+        input.add(new Sequence("e", "ce", "aaacccgggtttacgtacgt"));
+        List<Sequence> alignment = new CollapsingAligner(new JavaAligner()).align(input);
+        checkAlignment(input, alignment);
+        assertThat(alignment.get(2).getSequence(), equalTo(alignment.get(0).getSequence()));
+        assertThat(alignment.get(4).getSequence(), equalTo(alignment.get(0).getSequence()));
+        assertThat(alignment.get(3).getSequence(), equalTo(alignment.get(1).getSequence()));
+        assertThat(alignment.get(1).getSequence(), containsString("-"));
+    }
+
+    /**
+     * Test the ungapped fast path.
+     */
+    public void testUngapped() {
+        List<Sequence> input = new ArrayList<Sequence>();
+        input.add(new Sequence("a", "", "aaacccgggtttacgtacgt"));
+        input.add(new Sequence("b", "", "aaaccGgggtttacgtacgt"));
+        input.add(new Sequence("c", "", "aaacccgggtttacgaacgt"));
+        assertThat(UngappedAligner.isUngapped(input), equalTo(true));
+        input.add(new Sequence("d", "", "aaacccgggtttacgtacg"));
+        assertThat(UngappedAligner.isUngapped(input), equalTo(false));
+        input.set(3, new Sequence("d", "", "aaacccggttttacgtacgt"));
+        assertThat(UngappedAligner.isUngapped(input), equalTo(true));
+        input.set(3, new Sequence("d", "", "aaaccgggtttaacgtacgt"));
+        assertThat(UngappedAligner.isUngapped(input), equalTo(false));
+    }
+
+    /**
+     * Test the anchoring aligner.
+     *
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public void testAnchor() throws IOException, InterruptedException {
+        final String left = "tgactgcaagctaggtcatcggattcaaacg";
+        final String right = "tcagggctattcgcgtaatggcacctgtca";
+        // The middle segments have the same length, but the second has a deletion at the start and an insertion at
+        // the end.
+        List<Sequence> input = new ArrayList<Sequence>();
+        input.add(new Sequence("a", "ca", left + "cgtcagtatgcatcgt" + right));
+        input.add(new Sequence("b", "cb", left + "gtcagtatgcatcgta" + right));
+        List<Sequence> alignment = new AnchorAligner(new JavaAligner()).align(input);
+        checkAlignment(input, alignment);
+        assertThat(rows(alignment), contains(left + "cgtcagtatgcatcgt-" + right, left + "-gtcagtatgcatcgta" + right));
+        // A substitution between the anchors needs no alignment.
+        input.set(1, new Sequence("b", "cb", left + "cgtcagtttgcatcgt" + right));
+        FailingAligner failing = new FailingAligner();
+        alignment = new AnchorAligner(failing).align(input);
+        checkAlignment(input, alignment);
+        assertThat(alignment.get(1).getSequence(), equalTo(input.get(1).getSequence()));
+        assertThat(failing.calls, equalTo(0));
+    }
+
+    /**
+     * Test the aligner providers.
+     *
+     * @throws ParseFailureException
+     * @throws InterruptedException
+     * @throws IOException
+     */
+    public void testProviders() throws ParseFailureException, IOException, InterruptedException {
+        assertThat(MultiAligner.getNames(), hasItems("clustal", "java", "stub"));
+        MultiAligner aligner = MultiAligner.create("STUB", new File("data"));
+        assertThat(aligner.getName(), equalTo("stub"));
+        List<Sequence> input = new ArrayList<Sequence>();
+        input.add(new Sequence("a", "ca", "aaacccgggtttacgtacgt"));
+        input.add(new Sequence("b", "cb", "aaacccgggtacgtacgt"));
+        List<Sequence> alignment = aligner.align(input);
+        checkAlignment(input, alignment);
+        assertThat(alignment.get(1).getSequence(), equalTo("aaacccgggtacgtacgt--"));
+        try {
+            MultiAligner.create("nosuch", new File("data"));
+            fail("Invalid aligner name accepted.");
+        } catch (ParseFailureException e) {
+            assertThat(e.getMessage(), containsString("stub"));
+        }
+    }
+
+    /**
+     * Test the star aligner.
+     *
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public void testStar() throws IOException, InterruptedException {
+        List<Sequence> alignment = checkSnips(new StarAligner());
+        // The base row is gapped only where another sequence has an insertion.
+        assertThat(alignment.get(0).getSequence(), containsString("-"));
+        List<Sequence> input = new ArrayList<Sequence>();
+        input.add(new Sequence("a", "ca", "aaacccgggtttacgtacgt"));
+        input.add(new Sequence("b", "cb", "aaacccgggtacgtacgt"));
+        input.add(new Sequence("c", "cc", "aaacccgggtttaaacgtacgt"));
+        alignment = new StarAligner().align(input);
+        checkAlignment(input, alignment);
+        // Only the insertion in the third sequence causes gaps in the base row, and none of the gaps are in the third row.
+        assertThat(alignment.get(0).getSequence().length(), equalTo(22));
+        assertThat(alignment.get(2).getSequence(), equalTo("aaacccgggtttaaacgtacgt"));
+    }
+
+    /**
+     * Test the flank-trimming aligner.
+     *
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public void testFlankTrimming() throws IOException, InterruptedException {
+        checkSnips(new FlankTrimmingAligner(new JavaAligner()));
+        List<Sequence> input = new ArrayList<Sequence>();
+        input.add(new Sequence("a", "ca", "aaacccgggtttacgtacgt"));
+        input.add(new Sequence("b", "cb", "aaacccgggtacgtacgt"));
+        input.add(new Sequence("c", "cc", "aaacccgggtttacgtacgt"));
+        List<Sequence> alignment = new FlankTrimmingAligner(new JavaAligner()).align(input);
+        checkAlignment(input, alignment);
+        assertThat(alignment.get(1).getSequence(), startsWith("aaacccggg"));
+        assertThat(alignment.get(1).getSequence(), endsWith("acgtacgt"));
+        // Identical sequences need no alignment at all.
+        input.set(1, new Sequence("b", "cb", "aaacccgggtttacgtacgt"));
+        FailingAligner failing = new FailingAligner();
+        alignment = new FlankTrimmingAligner(failing).align(input);
+        checkAlignment(input, alignment);
+        assertThat(failing.calls, equalTo(0));
+    }
+
+    /**
+     * Test the caching aligner.
+     *
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public void testCaching() throws IOException, InterruptedException {
+        TemporaryFolder tempDir = new TemporaryFolder();
+        tempDir.create();
+        try {
+            File cacheDir = new File(tempDir.getRoot(), "cache");
+            CachingAligner aligner = new CachingAligner(new JavaAligner(), cacheDir, 1024L * 1024L);
+            assertThat(aligner.getName(), equalTo("java"));
+            List<Sequence> first = checkSnips(aligner);
+            assertThat(cacheDir.listFiles().length, equalTo(1));
+            // The second alignment comes from the cache, in a new aligner whose inner aligner cannot run.
+            CachingAligner cached = new CachingAligner(new JavaAligner() {
+                @Override
+                public List<Sequence> align(List<Sequence> sequences) {
+                    throw new IllegalStateException("Cache miss.");
+                }
+            }, cacheDir, 1024L * 1024L);
+            List<Sequence> second = checkSnips(cached);
+            assertThat(rows(second), equalTo(rows(first)));
+        } finally {
+            tempDir.delete();
+        }
+    }
+
+    /**
+     * Test the guarded aligner.
+     *
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public void testGuarded() throws IOException, InterruptedException {
+        // A successful alignment passes through unchanged.
+        GuardedAligner guarded = new GuardedAligner(new JavaAligner(), 60, 1, GuardedAligner.Fallback.SKIP);
+        guarded.startJob();
+        List<Sequence> alignment = checkSnips(guarded);
+        List<String> genomeIds = new ArrayList<String>();
+        List<Sequence> input = loadRegions(genomeIds, CLOSE_FEATURES).toSequences();
+        assertThat(rows(alignment), equalTo(rows(new JavaAligner().align(input))));
+        assertThat(guarded.isJobFallback(), equalTo(false));
+        // A failing aligner is retried and then replaced by the fallback.
+        FailingAligner failing = new FailingAligner();
+        guarded = new GuardedAligner(failing, 0, 2, GuardedAligner.Fallback.STAR);
+        guarded.startJob();
+        alignment = checkSnips(guarded);
+        assertThat(failing.calls, equalTo(3));
+        assertThat(rows(alignment), equalTo(rows(new StarAligner().align(input))));
+        assertThat(guarded.isJobFallback(), equalTo(true));
+        // The fallback is recorded only for the thread that used it, and a new job clears it.
+        GuardedAligner used = guarded;
+        AtomicBoolean otherFallback = new AtomicBoolean(true);
+        Thread other = new Thread(() -> otherFallback.set(used.isJobFallback()));
+        other.start();
+        other.join();
+        assertThat(otherFallback.get(), equalTo(false));
+        guarded.startJob();
+        assertThat(guarded.isJobFallback(), equalTo(false));
+        guarded = new GuardedAligner(new FailingAligner(), 0, 0, GuardedAligner.Fallback.UNGAPPED);
+        alignment = guarded.align(input);
+        checkAlignment(input, alignment);
+        guarded = new GuardedAligner(new FailingAligner(), 0, 0, GuardedAligner.Fallback.SKIP);
+        assertThat(guarded.align(input), nullValue());
+        // A timed-out attempt also uses the fallback.
+        MultiAligner slow = new JavaAligner() {
+            @Override
+            public List<Sequence> align(List<Sequence> sequences) {
+                try {
+                    Thread.sleep(10000);
+                } catch (InterruptedException e) { }
+                return super.align(sequences);
+            }
+        };
+        guarded = new GuardedAligner(slow, 1, 0, GuardedAligner.Fallback.STAR);
+        alignment = guarded.align(input);
+        checkAlignment(input, alignment);
+        assertThat(rows(alignment), equalTo(rows(new StarAligner().align(input))));
+    }
+
+    /**
+     * Test the splitting aligner.
+     *
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public void testSplit() throws IOException, InterruptedException {
+        Map<String, Integer> upstreams = upstreamLengths();
+        checkSnips(new SplitAligner(new JavaAligner(), x -> upstreams.getOrDefault(x, -1)));
+        // Here the upstream parts differ by an indel and the coding parts are identical.
+        List<Sequence> input = new ArrayList<Sequence>();
+        input.add(new Sequence("a", "ca", "ttgacaatgaaacccgggtaa"));
+        input.add(new Sequence("b", "cb", "ttgaatgaaacccgggtaa"));
+        input.add(new Sequence("c", "cc", "ttgacaatgaaacccgggtaa"));
+        Map<String, Integer> splits = new HashMap<String, Integer>();
+        splits.put("a", 6);
+        splits.put("b", 4);
+        splits.put("c", 6);
+        List<Sequence> alignment = new SplitAligner(new JavaAligner(), x -> splits.getOrDefault(x, -1)).align(input);
+        checkAlignment(input, alignment);
+        for (Sequence seq : alignment)
+            assertThat(seq.getSequence().substring(6), equalTo("atgaaacccgggtaa"));
+        assertThat(alignment.get(1).getSequence().substring(0, 6).replace("-", ""), equalTo("ttga"));
+        // An unknown boundary causes the sequences to be aligned whole.
+        splits.remove("b");
+        alignment = new SplitAligner(new StubAligner(), x -> splits.getOrDefault(x, -1)).align(input);
+        assertThat(alignment.get(1).getSequence(), equalTo("ttgaatgaaacccgggtaa--"));
+        // A fallback is charged to the job even if the first row's segment was empty and never reached the guard.
+        input.set(0, new Sequence("a", "ca", "atgaaacccgggtaa"));
+        splits.put("a", 0);
+        splits.put("b", 4);
+        GuardedAligner guard = new GuardedAligner(new FailingAligner(), 0, 0, GuardedAligner.Fallback.STAR);
+        guard.startJob();
+        alignment = new SplitAligner(guard, x -> splits.getOrDefault(x, -1)).align(input);
+        checkAlignment(input, alignment);
+        assertThat(guard.isJobFallback(), equalTo(true));
+    }
+
+    /**
+     * Test the codon-threading aligner.
+     *
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public void testCodon() throws IOException, InterruptedException {
+        Map<String, Integer> upstreams = upstreamLengths();
+        checkSnips(new CodonAligner(new JavaAligner(), x -> upstreams.getOrDefault(x, -1)));
+        // Here the second coding sequence is missing a codon and has a leftover base.
+        List<Sequence> input = new ArrayList<Sequence>();
+        input.add(new Sequence("a", "ca", "ggatgaaacccgggtttaaa"));
+        input.add(new Sequence("b", "cb", "ggatgaaacccgggaaag"));
+        input.add(new Sequence("c", "cc", "ggatgaaacccgggtttaaa"));
+        List<Sequence> alignment = new CodonAligner(new JavaAligner(), x -> 2).align(input);
+        checkAlignment(input, alignment);
+        String row = alignment.get(1).getSequence();
+        int gap = row.indexOf('-');
+        assertThat(gap, greaterThan(1));
+        assertThat((gap - 2) % 3, equalTo(0));
+        assertThat(row.substring(gap, gap + 3), equalTo("---"));
+    }
+
+}